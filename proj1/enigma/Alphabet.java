@@ -1,31 +1,41 @@
 package enigma;
-import java.util.ArrayList;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Colby Chang
  */
 class Alphabet {
-    /** List of letters in the alphabet.
+    /** Letters of the alphabet, in order.
      */
-    private ArrayList<Character> _alphabet = new ArrayList<Character>();
+    private char[] _alphabet;
+
+    /** One more than the index of each character up to the largest in the
+     *  alphabet, or 0 for those not in it. */
+    private char[] _indices;
 
     /** A new alphabet containing CHARS.  Character number #k has index
-     *  K (numbering from 0). No character may be duplicated. */
+     *  K (numbering from 0). No character may be duplicated. Since
+     *  parentheses, asterisks and spaces are excluded, an alphabet has
+     *  at most 65,532 characters, so one more than any index fits in
+     *  the chars of _indices. */
     Alphabet(String chars) {
         if (chars.contains("(") || chars.contains(")")
                 || chars.contains("*") || chars.contains(" ")) {
             throw new EnigmaException(
                     "Invalid alphabet format: Contains (, ), *, or spaces");
         }
-        for (int i = 0; i < chars.length() - 1; i++) {
-            if (chars.substring(i + 1).contains(("" + chars.charAt(i)))) {
+        _alphabet = chars.toCharArray();
+        char largest = 0;
+        for (char character : _alphabet) {
+            largest = (char) Math.max(largest, character);
+        }
+        _indices = new char[_alphabet.length == 0 ? 0 : largest + 1];
+        for (int i = 0; i < _alphabet.length; i++) {
+            if (_indices[_alphabet[i]] != 0) {
                 throw new EnigmaException(
                         "Invalid alphabet format: Duplicate letters");
             }
-        }
-        for (char character : chars.toCharArray()) {
-            _alphabet.add(character);
+            _indices[_alphabet[i]] = (char) (i + 1);
         }
     }
 
@@ -36,24 +46,24 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _alphabet.size();
+        return _alphabet.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _alphabet.contains(ch);
+        return ch < _indices.length && _indices[ch] != 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        return _alphabet.get(index);
+        return _alphabet[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        return _alphabet.indexOf(ch);
+        return contains(ch) ? _indices[ch] - 1 : -1;
     }
 
 }
@@ -0,0 +1,50 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Colby Chang
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkAlphabetLookup() {
+        Alphabet a = new Alphabet("zA\u00e9\u4e2d1");
+        assertEquals(5, a.size());
+        assertEquals(3, a.toInt('\u4e2d'));
+        assertEquals('\u00e9', a.toChar(2));
+        assertEquals(true, a.contains('z'));
+        assertEquals(false, a.contains('B'));
+        assertEquals(false, a.contains('\uffff'));
+        assertEquals(-1, a.toInt('\u4e2e'));
+    }
+
+    @Test
+    public void checkLargestAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = Character.MAX_VALUE; c >= 0; c -= 1) {
+            if ("()* ".indexOf(c) < 0) {
+                chars.append((char) c);
+            }
+        }
+        Alphabet a = new Alphabet(chars.toString());
+        assertEquals(65532, a.size());
+        assertEquals(0, a.toInt('\uffff'));
+        assertEquals(65531, a.toInt('\u0000'));
+        assertEquals('\u0000', a.toChar(65531));
+        assertEquals(true, a.contains('\u0000'));
+        assertEquals(false, a.contains('*'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicate() {
+        new Alphabet("ABCA");
+    }
+}
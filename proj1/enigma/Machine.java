@@ -1,8 +1,8 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.HashMap;
 import java.util.Collection;
-import java.util.ArrayList;
 
 import static enigma.EnigmaException.*;
 
@@ -55,7 +55,7 @@ class Machine {
                     }
                 }
             }
-            _ROTORS = new ArrayList<Rotor>();
+            _ROTORS = new Rotor[rotors.length];
             String setting = "";
             for (int i = 0; i < rotors.length; i++) {
                 if (!_allRotors.containsKey(rotors[i])) {
@@ -72,7 +72,7 @@ class Machine {
                     throw new EnigmaException("Rotor " + i
                             + " must be a moving rotor");
                 } else {
-                    _ROTORS.add(_allRotors.get(rotors[i]));
+                    _ROTORS[i] = _allRotors.get(rotors[i]);
                     setting = setting + _alphabet.toChar(0);
                 }
             }
@@ -90,7 +90,7 @@ class Machine {
             throw new EnigmaException("Wheel settings too long");
         }
         for (int i = 0; i < setting.length(); i++) {
-            _ROTORS.get(i + 1).set(setting.charAt(i));
+            _ROTORS[i + 1].set(setting.charAt(i));
         }
     }
 
@@ -102,7 +102,7 @@ class Machine {
             throw new EnigmaException("Too many ring settings.");
         }
         for (int i = 0; i < ringSetting.length(); i++) {
-            _ROTORS.get(i + 1).setRing(ringSetting.charAt(i));
+            _ROTORS[i + 1].setRing(ringSetting.charAt(i));
         }
     }
 
@@ -117,10 +117,10 @@ class Machine {
     int convert(int c) {
         c = _plugboard.permute(c);
         for (int i = numRotors() - 1; i >= 0; i--) {
-            c = _ROTORS.get(i).convertForward(c);
+            c = _ROTORS[i].convertForward(c);
         }
         for (int i = 1; i < numRotors(); i++) {
-            c = _ROTORS.get(i).convertBackward(c);
+            c = _ROTORS[i].convertBackward(c);
         }
         c = _plugboard.invert(c);
         return c;
@@ -129,34 +129,75 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        for (char c : msg.toCharArray()) {
-            if (!_alphabet.contains(c)) {
-                throw new EnigmaException("character '"
-                        + c + "' not in alphabet");
-            }
-            boolean[] rotate = new boolean[numRotors()];
-            for (int i = 1; i < rotate.length; i++) {
-                rotate[i] = false;
-            }
-            for (int i = 1; i < numRotors() - 1; i++) {
-                if (_ROTORS.get(i).rotates() && _ROTORS.get(i + 1).atNotch()
-                        || _ROTORS.get(i - 1).rotates()
-                        && _ROTORS.get(i).atNotch()) {
-                    rotate[i] = true;
-                }
-            }
-            for (int i = 0; i < numRotors(); i++) {
-                if (rotate[i]) {
-                    _ROTORS.get(i).advance();
-                }
+        char[] chars = msg.toCharArray();
+        convert(chars, 0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    /** Encodes/decodes the LEN characters of IN starting at OFF into OUT
+     *  starting at OUTOFF, updating the state of the rotors accordingly.
+     *  IN and OUT may be the same array, as long as OUTOFF is at most OFF
+     *  or the two ranges do not overlap, since each character is written
+     *  before the ones after it are read. Nothing is allocated, so this is
+     *  the way to convert messages of any length in pieces. */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        if (in == out && outOff > off && outOff < off + len) {
+            throw new EnigmaException("Output overlaps unread input");
+        }
+        for (int i = 0; i < len; i++) {
+            out[outOff + i] = convert(in[off + i]);
+        }
+    }
+
+    /** Encodes/decodes the remaining characters of IN into OUT, which
+     *  must have room for them, advancing the positions of both and
+     *  updating the state of the rotors accordingly. */
+    void convert(CharBuffer in, CharBuffer out) {
+        if (out.remaining() < in.remaining()) {
+            throw new EnigmaException("Output buffer too small");
+        }
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            int len = in.remaining();
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            while (in.hasRemaining()) {
+                out.put(convert(in.get()));
             }
-            if (_ROTORS.get(numRotors() - 1).rotates()) {
-                _ROTORS.get(numRotors() - 1).advance();
+        }
+    }
+
+    /** Returns the encoding/decoding of the character C, after first
+     *  advancing the machine. */
+    private char convert(char c) {
+        if (!_alphabet.contains(c)) {
+            throw new EnigmaException("character '"
+                    + c + "' not in alphabet");
+        }
+        step();
+        return _alphabet.toChar(convert(_alphabet.toInt(c)));
+    }
+
+    /** Advances the rotors by one keypress. Each rotor but the last with a
+     *  pawl moves if it or the rotor to its left can move and the rotor to
+     *  its right, or itself, is at a notch; the last always moves. A
+     *  rotor's decision reads only its own notch and that of the rotor to
+     *  its right, which have not moved yet, so each rotor is moved as soon
+     *  as it is decided. */
+    private void step() {
+        int last = numRotors() - 1;
+        for (int i = 1; i < last; i++) {
+            Rotor rotor = _ROTORS[i];
+            if (rotor.rotates() && _ROTORS[i + 1].atNotch()
+                    || _ROTORS[i - 1].rotates() && rotor.atNotch()) {
+                rotor.advance();
             }
-            result += _alphabet.toChar(convert(_alphabet.toInt(c)));
         }
-        return result;
+        if (_ROTORS[last].rotates()) {
+            _ROTORS[last].advance();
+        }
     }
 
     /** Common alphabet of my rotors. */
@@ -171,8 +212,8 @@ class Machine {
     /** HashMap mapping rotor name to its rotor. Contains all rotors. */
     private HashMap<String, Rotor> _allRotors;
 
-    /** ArrayList representing rotor slots. */
-    private ArrayList<Rotor> _ROTORS;
+    /** Rotors in their slots, the reflector first. */
+    private Rotor[] _ROTORS;
 
     /** Plugboard of machine. */
     private Permutation _plugboard;
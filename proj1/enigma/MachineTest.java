@@ -4,8 +4,11 @@ import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 
+import static enigma.TestUtils.*;
+
 /** The suite of all JUnit tests for the Rotor class.
  *  @author Colby Chang
  */
@@ -34,4 +37,53 @@ public class MachineTest {
         assertEquals(5, m.numRotors());
         assertEquals(4, m.numPawls());
     }
+
+    /** Returns a machine with rotors B Beta III IV I, set at AXLE, with
+     *  plugboard (YF) (ZH). */
+    Machine getNavalMachine() {
+        Alphabet a = getNewAlphabet();
+        ArrayList<Rotor> lst = new ArrayList<Rotor>();
+        lst.add(new Reflector("B", getNewPermutation(NAVALA.get("B"), a)));
+        lst.add(new FixedRotor("Beta",
+                getNewPermutation(NAVALA.get("Beta"), a)));
+        lst.add(new MovingRotor("I",
+                getNewPermutation(NAVALA.get("I"), a), "Q"));
+        lst.add(new MovingRotor("III",
+                getNewPermutation(NAVALA.get("III"), a), "V"));
+        lst.add(new MovingRotor("IV",
+                getNewPermutation(NAVALA.get("IV"), a), "J"));
+        Machine m = new Machine(a, 5, 3, lst);
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        m.setRotors("AXLE");
+        m.setPlugboard(getNewPermutation("(YF) (ZH)", a));
+        return m;
+    }
+
+    @Test
+    public void testBulkConvert() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = getNavalMachine().convert(msg);
+        assertEquals("AFIZKBKOXLIUFDCQPPSYSZWSQCNJLXNUOJFRHRKTCNBDGU",
+                expected);
+        char[] out = new char[msg.length() + 2];
+        Machine m = getNavalMachine();
+        m.convert(msg.toCharArray(), 0, 10, out, 2);
+        m.convert(msg.toCharArray(), 10, msg.length() - 10, out, 12);
+        assertEquals(expected, new String(out, 2, msg.length()));
+        CharBuffer in = CharBuffer.wrap(msg);
+        CharBuffer buf = CharBuffer.allocate(msg.length());
+        getNavalMachine().convert(in, buf);
+        assertEquals(0, in.remaining());
+        buf.flip();
+        assertEquals(expected, buf.toString());
+        char[] chars = (".." + msg).toCharArray();
+        getNavalMachine().convert(chars, 2, msg.length(), chars, 0);
+        assertEquals(expected, new String(chars, 0, msg.length()));
+        try {
+            getNavalMachine().convert(chars, 0, msg.length(), chars, 2);
+            fail("overlapping output ahead of the input was accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(expected, new String(chars, 0, msg.length()));
+        }
+    }
 }
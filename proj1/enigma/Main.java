@@ -192,11 +192,15 @@ public final class Main {
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
-        while (msg.length() > 5) {
-            _output.print(msg.substring(0, 5) + " ");
-            msg = msg.substring(5);
+        StringBuilder line = new StringBuilder(msg.length()
+                + msg.length() / 5);
+        for (int i = 0; i < msg.length(); i += 5) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(msg, i, Math.min(i + 5, msg.length()));
         }
-        _output.println(msg);
+        _output.println(line);
     }
 
     /** Alphabet used in this machine. */
@@ -14,12 +14,13 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
+        _notches = new boolean[size()];
         for (char c : notches.toCharArray()) {
             if (!alphabet().contains(c)) {
                 throw new EnigmaException("Notch not in alphabet");
             }
+            _notches[alphabet().toInt(c)] = true;
         }
-        _notches = notches;
     }
 
     @Override
@@ -29,8 +30,7 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        return _notches.contains(alphabet().toChar(
-                permutation().wrap(setting())) + "");
+        return _notches[setting()];
     }
 
     @Override
@@ -38,7 +38,7 @@ class MovingRotor extends Rotor {
         set(setting() + 1);
     }
 
-    /** String that contains the notches of the moving rotor. **/
-    private String _notches;
+    /** True at the settings at which the moving rotor is at a notch. **/
+    private boolean[] _notches;
 
 }
@@ -16,7 +16,12 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _string = cycles;
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i++) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
         while (cycles.contains(") ")) {
             int i = cycles.indexOf(") ");
             cycles = cycles.substring(0, i + 1) + cycles.substring(i + 2);
@@ -66,27 +71,36 @@ class Permutation {
                     cycles = cycles.substring(1);
                 }
             }
-            _cycles = new ArrayList<ArrayList<Character>>();
             for (String s : lst) {
                 addCycle(s);
             }
-        } else {
-            _cycles = new ArrayList<ArrayList<Character>>();
         }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm, by entering each step of it in the forward and inverse
+     *  tables. */
     private void addCycle(String cycle) {
-        ArrayList<Character> lst = new ArrayList<Character>();
-        for (char c : cycle.toCharArray()) {
-            lst.add(c);
+        for (int i = 0; i < cycle.length(); i++) {
+            int from = _alphabet.toInt(cycle.charAt(i));
+            int to = _alphabet.toInt(cycle.charAt((i + 1) % cycle.length()));
+            _forward[from] = to;
+            _inverse[to] = from;
         }
-        _cycles.add(lst);
     }
 
-    /** Return the value of P modulo the size of this permutation. */
+    /** Return the value of P modulo the size of this permutation. Values
+     *  within one size of the range, as rotor offsets give, are wrapped
+     *  without dividing. */
     final int wrap(int p) {
+        int size = _forward.length;
+        if (p >= 0 && p < size) {
+            return p;
+        } else if (p < 0 && p >= -size) {
+            return p + size;
+        } else if (p >= size && p < 2 * size) {
+            return p - size;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -102,44 +116,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char ch = _alphabet.toChar(wrap(p));
-        int i = 0;
-        ArrayList lst = null;
-        while (i < _cycles.size()) {
-            if (_cycles.get(i).contains(ch)) {
-                lst = _cycles.get(i);
-                break;
-            }
-            i++;
-        }
-        if (lst == null) {
-            return wrap(p);
-        }
-        int permuteI = (lst.indexOf(ch) + 1) % lst.size();
-        return _alphabet.toInt((char) lst.get(permuteI));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char ch = _alphabet.toChar(wrap(c));
-        int i = 0;
-        ArrayList lst = null;
-        while (i < _cycles.size()) {
-            if (_cycles.get(i).contains(ch)) {
-                lst = _cycles.get(i);
-                break;
-            }
-            i++;
-        }
-        if (lst == null) {
-            return wrap(c);
-        }
-        int permuteI = (lst.indexOf(ch) - 1) % lst.size();
-        if (permuteI < 0) {
-            permuteI += lst.size();
-        }
-        return _alphabet.toInt((char) lst.get(permuteI));
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -167,13 +150,8 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (ArrayList<Character> cycle : _cycles) {
-            if (cycle.size() == 1) {
-                return false;
-            }
-        }
-        for (int i = 0; i < _alphabet.size(); i++) {
-            if (!_string.contains("" + _alphabet.toChar(i))) {
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
@@ -183,9 +161,9 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Permutations in the form of ArrayLists. */
-    private ArrayList<ArrayList<Character>> _cycles;
+    /** Index to which each index of the alphabet is permuted. */
+    private int[] _forward;
 
-    /** Original cycles string, used to check for derangement. */
-    private String _string;
+    /** Index to which each index of the alphabet is inverted. */
+    private int[] _inverse;
 }
@@ -296,4 +296,18 @@ public class PermutationTest {
         Permutation p = getNewPermutation("", a);
         checkPerm("identity", UPPER_STRING, UPPER_STRING, p, a);
     }
+
+    @Test
+    public void checkInverseOfLongCycle() {
+        Alphabet a = getNewAlphabet(UPPER_STRING + "0123456789");
+        Permutation p = getNewPermutation("(AQ3ZB) (C9) (X)", a);
+        for (int i = -a.size(); i < 2 * a.size(); i += 1) {
+            assertEquals(p.wrap(i), p.invert(p.permute(i)));
+            assertEquals(p.wrap(i), p.permute(p.invert(i)));
+        }
+        assertEquals('A', p.permute('B'));
+        assertEquals('B', p.invert('A'));
+        assertEquals('X', p.permute('X'));
+        assertEquals('9', p.invert('C'));
+    }
 }
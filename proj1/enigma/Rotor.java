@@ -92,23 +92,15 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int pO = (_permutation.permute(p + setting() - ringSetting())
-                - setting() + ringSetting()) % size();
-        if (pO < 0) {
-            pO += size();
-        }
-        return pO;
+        return _permutation.wrap(_permutation.permute(p + setting()
+                - ringSetting()) - setting() + ringSetting());
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int eO = (_permutation.invert(e + setting() - ringSetting())
-                - setting() + ringSetting()) % size();
-        if (eO < 0) {
-            eO += size();
-        }
-        return eO;
+        return _permutation.wrap(_permutation.invert(e + setting()
+                - ringSetting()) - setting() + ringSetting());
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -10,7 +10,8 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(PermutationTest.class,
+        System.exit(textui.runClasses(AlphabetTest.class,
+                                      PermutationTest.class,
                                       MovingRotorTest.class,
                                       RotorTest.class,
                                       ReflectorTest.class,
@@ -0,0 +1,432 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/** Benchmark driver for gitlet. It generates a synthetic repository in the
+ *  current directory from a seed, with a given number of commits, files,
+ *  file sizes and branches that are merged into master at regular
+ *  intervals, plus a remote to push to and a clone that fetches from it,
+ *  directly or through a Server in this process. It then times the core
+ *  commands, each through the same calls that Main makes, and prints the
+ *  latency and throughput of each as JSON.
+ *
+ *  Usage: java gitlet.Bench [--NAME VALUE]..., where NAME is one of seed,
+ *  commits, files, size, branches, merge-every, changes, warmup and
+ *  iterations, or "only" followed by a comma-separated list of benchmarks.
+ *  @author Colby Chang
+ */
+public class Bench {
+
+    /** Runs the benchmarks.
+     *  @param args options, as described above
+     */
+    public static void main(String... args) {
+        try {
+            Bench bench = new Bench(args);
+            bench.run();
+        } catch (GitletException excp) {
+            if (excp.getMessage() != null) {
+                System.err.println(excp.getMessage());
+            }
+            System.exit(1);
+        }
+    }
+
+    /** Creates a new Bench.
+     *  @param args options, as described above
+     */
+    Bench(String[] args) {
+        _params.put("seed", 61);
+        _params.put("commits", 200);
+        _params.put("files", 100);
+        _params.put("size", 2048);
+        _params.put("branches", 3);
+        _params.put("merge-every", 10);
+        _params.put("changes", 3);
+        _params.put("warmup", 5);
+        _params.put("iterations", 20);
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i].startsWith("--")
+                    ? args[i].substring(2) : null;
+            if (name == null || i + 1 == args.length) {
+                throw Utils.error("Incorrect operands.");
+            } else if (name.equals("only")) {
+                _only = Arrays.asList(args[i + 1].split(","));
+            } else if (_params.containsKey(name)
+                    && args[i + 1].matches("\\d+")) {
+                _params.put(name, Integer.parseInt(args[i + 1]));
+            } else {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        if (_params.get("files") < _params.get("branches")
+                || _params.get("branches") < 1) {
+            throw Utils.error("Every branch needs at least one file.");
+        }
+        _random = new Random(_params.get("seed"));
+    }
+
+    /** Generates the repository, runs the benchmarks and prints the
+     *  results.
+     */
+    void run() {
+        if (Main.GITLET_FOLDER.exists()) {
+            throw Utils.error("A Gitlet version-control system already "
+                    + "exists in the current directory.");
+        }
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        try {
+            generate();
+        } finally {
+            System.setOut(out);
+        }
+        double setup = (System.nanoTime() - start) / 1e9;
+        ArrayList<String> results = new ArrayList<String>();
+        for (String name : BENCHMARKS) {
+            if (_only == null || _only.contains(name)) {
+                System.setOut(new PrintStream(
+                        OutputStream.nullOutputStream()));
+                try {
+                    results.add(measure(name));
+                } finally {
+                    System.setOut(out);
+                }
+            }
+        }
+        StringBuilder json = new StringBuilder("{\n  \"params\": {");
+        String separator = "";
+        for (String name : _params.keySet()) {
+            json.append(separator).append("\"").append(name).append("\": ").
+                    append(_params.get(name));
+            separator = ", ";
+        }
+        json.append("},\n  \"java\": \"").
+                append(System.getProperty("java.version")).
+                append("\",\n  \"setup_s\": ").
+                append(String.format(Locale.ROOT, "%.3f", setup)).
+                append(",\n  \"results\": [\n    ").
+                append(String.join(",\n    ", results)).append("\n  ]\n}");
+        System.out.println(json);
+    }
+
+    /** Generates the synthetic repository: every file is added in one
+     *  commit, after which each commit changes files owned by one branch,
+     *  in turn, and every merge-every commits one of the other branches is
+     *  merged into master. Master is then pushed to a remote.
+     */
+    private void generate() {
+        int files = _params.get("files"), branches = _params.get("branches");
+        Main.GITLET_FOLDER.mkdir();
+        new Repo(Main.GITLET_FOLDER).init();
+        for (int i = 0; i < files; i += 1) {
+            writeFile(i);
+            repo().add(fileName(i));
+        }
+        repo().createCommit("Add files");
+        for (int b = 1; b < branches; b += 1) {
+            repo().createBranch("b" + b);
+        }
+        for (int i = 0; i < _params.get("commits"); i += 1) {
+            int b = i % branches;
+            checkout(b == 0 ? "master" : "b" + b);
+            change(b);
+            repo().createCommit("Commit " + i);
+            if (branches > 1 && (i + 1) % _params.get("merge-every") == 0) {
+                checkout("master");
+                merge("b" + (1 + (i / _params.get("merge-every"))
+                        % (branches - 1)));
+            }
+        }
+        checkout("master");
+        File remote = Utils.join(new File(REMOTE), ".gitlet");
+        remote.mkdirs();
+        new Repo(remote).init();
+        repo().createRemote("origin", remote);
+        repo().pushToRemoteBranch("origin", "master");
+    }
+
+    /** Times one benchmark, leaving the repository clean.
+     *  @param name name of the benchmark
+     *  @return its results, as a JSON object
+     */
+    private String measure(String name) {
+        int warmup = _params.get("warmup");
+        int iterations = _params.get("iterations");
+        long[] times = new long[iterations];
+        String base = repo().getCurrentBranch().getHeadId();
+        if (name.equals("merge")) {
+            setUpMerge();
+            base = repo().getCurrentBranch().getHeadId();
+        }
+        for (int i = -warmup; i < iterations; i += 1) {
+            long time = iterate(name, base, i);
+            if (i >= 0) {
+                times[i] = time;
+            }
+        }
+        if (name.equals("add")) {
+            repo().createCommit("Added by benchmark");
+        } else if (name.equals("merge")) {
+            repo().resetToCommit(Utils.join(repo().getCommits(), base));
+        } else if (name.equals("checkout")) {
+            checkout("master");
+        }
+        Arrays.sort(times);
+        double total = 0;
+        for (long time : times) {
+            total += time;
+        }
+        double mean = total / Math.max(iterations, 1);
+        return String.format(Locale.ROOT, "{\"name\": \"%s\", "
+                + "\"iterations\": %d, \"mean_ms\": %.3f, \"p50_ms\": %.3f, "
+                + "\"p90_ms\": %.3f, \"max_ms\": %.3f, \"ops_per_s\": %.1f}",
+                name, iterations, mean / 1e6, percentile(times, 50) / 1e6,
+                percentile(times, 90) / 1e6,
+                percentile(times, 100) / 1e6,
+                mean > 0 ? 1e9 / mean : 0);
+    }
+
+    /** Runs one iteration of a benchmark, timing only the command itself.
+     *  @param name name of the benchmark
+     *  @param base hash of the head of master when the benchmark started
+     *  @param i number of the iteration, negative during warmup
+     *  @return time taken by the command, in nanoseconds
+     */
+    private long iterate(String name, String base, int i) {
+        long start;
+        switch (name) {
+        case "add":
+            int file = changedFile(0);
+            start = System.nanoTime();
+            repo().add(fileName(file));
+            break;
+        case "commit":
+            repo().add(fileName(changedFile(0)));
+            start = System.nanoTime();
+            repo().createCommit("Benchmark commit");
+            break;
+        case "status":
+            start = System.nanoTime();
+            repo().getStatus();
+            break;
+        case "log":
+            start = System.nanoTime();
+            repo().printLog();
+            break;
+        case "find-split-point":
+            start = System.nanoTime();
+            Repo repo = repo();
+            repo.findSplitPoint(repo.getCurrentBranch(), Utils.readObject(
+                    Utils.join(repo.getHeads(), otherBranch()),
+                    Branch.class));
+            break;
+        case "merge":
+            repo().resetToCommit(Utils.join(repo().getCommits(), base));
+            start = System.nanoTime();
+            merge(otherBranch());
+            break;
+        case "checkout":
+            String branch = (i & 1) == 0 ? otherBranch() : "master";
+            start = System.nanoTime();
+            checkout(branch);
+            break;
+        case "push":
+            repo().add(fileName(changedFile(0)));
+            repo().createCommit("Pushed commit");
+            start = System.nanoTime();
+            repo().pushToRemoteBranch("origin", "master");
+            break;
+        case "fetch":
+            Repo clone = makeClone(Utils.join(new File(REMOTE), ".gitlet").
+                    getPath());
+            start = System.nanoTime();
+            clone.fetchFromRemoteBranch("origin", "master");
+            break;
+        case "fetch-tcp":
+            clone = makeClone("gitlet://localhost:" + server().getPort());
+            start = System.nanoTime();
+            clone.fetchFromRemoteBranch("origin", "master");
+            break;
+        default:
+            throw Utils.error("No benchmark with that name exists.");
+        }
+        return System.nanoTime() - start;
+    }
+
+    /** Gives the branch merged by the merge benchmark a commit that master
+     *  does not have, so that every merge creates a merge commit.
+     */
+    private void setUpMerge() {
+        String other = otherBranch();
+        if (other.equals("master")) {
+            throw Utils.error("The merge benchmark needs two branches.");
+        }
+        checkout(other);
+        change(1);
+        repo().createCommit("Commit to merge");
+        checkout("master");
+    }
+
+    /** Creates an empty repository, replacing any earlier one, with the
+     *  remote as its origin. Like every init, this empties the staging
+     *  area of the current directory, which is already empty here.
+     *  @param origin location of the remote, a directory or a URL
+     *  @return the new repository
+     */
+    private Repo makeClone(String origin) {
+        File folder = Utils.join(new File(CLONE), ".gitlet");
+        Repo clone = new Repo(folder);
+        clone.deleteAllFiles(folder.getParentFile());
+        folder.mkdirs();
+        clone.init();
+        clone.createRemote("origin", origin);
+        return clone;
+    }
+
+    /** Returns a Server of the remote, running on a daemon thread of this
+     *  process, starting it on the first call.
+     *  @return the server
+     */
+    private Server server() {
+        if (_server == null) {
+            _server = new Server(Utils.join(new File(REMOTE), ".gitlet")
+                    .getAbsoluteFile(), 0);
+            Thread thread = new Thread(_server::serve);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return _server;
+    }
+
+    /** Returns the repository in the current directory.
+     *  @return the repository, as each command reads it
+     */
+    private Repo repo() {
+        return Repo.fromFile(Main.GITLET_FOLDER);
+    }
+
+    /** Checks out a branch, if it is not the current one.
+     *  @param name name of the branch
+     */
+    private void checkout(String name) {
+        Repo repo = repo();
+        if (!repo.getCurrentBranch().getName().equals(name)) {
+            repo.checkoutBranch(Utils.join(repo.getHeads(), name));
+        }
+    }
+
+    /** Merges a branch into the current one, ignoring the messages of
+     *  merges that only move the head.
+     *  @param name name of the branch to merge
+     */
+    private void merge(String name) {
+        Repo repo = repo();
+        try {
+            repo.mergeBranch(Utils.join(repo.getHeads(), name));
+        } catch (GitletException excp) {
+            return;
+        }
+    }
+
+    /** Rewrites and stages as many random files owned by a branch as the
+     *  changes option says.
+     *  @param branch number of the branch, 0 being master
+     */
+    private void change(int branch) {
+        for (int i = 0; i < _params.get("changes"); i += 1) {
+            repo().add(fileName(changedFile(branch)));
+        }
+    }
+
+    /** Rewrites a random file owned by a branch.
+     *  @param branch number of the branch, 0 being master
+     *  @return number of the file
+     */
+    private int changedFile(int branch) {
+        int branches = _params.get("branches");
+        int owned = (_params.get("files") - branch + branches - 1) / branches;
+        int file = branch + branches * _random.nextInt(owned);
+        writeFile(file);
+        return file;
+    }
+
+    /** Returns the branch, other than master, used by the benchmarks that
+     *  need two branches.
+     *  @return its name, or master if there is no other branch
+     */
+    private String otherBranch() {
+        return _params.get("branches") > 1 ? "b1" : "master";
+    }
+
+    /** Writes random lines of text to a file.
+     *  @param file number of the file
+     */
+    private void writeFile(int file) {
+        int size = _params.get("size");
+        byte[] contents = new byte[size];
+        for (int i = 0; i < size; i += 1) {
+            contents[i] = (i % LINE_LENGTH == LINE_LENGTH - 1) ? (byte) '\n'
+                    : (byte) ('a' + _random.nextInt(26));
+        }
+        Utils.writeContents(fileName(file), contents);
+    }
+
+    /** Returns the working file with a given number.
+     *  @param file number of the file
+     *  @return the file
+     */
+    private static File fileName(int file) {
+        return new File(String.format("f%05d.txt", file));
+    }
+
+    /** Returns a percentile of sorted times.
+     *  @param times sorted times
+     *  @param percent percentile
+     *  @return the smallest time not below percent percent of times
+     */
+    private static long percentile(long[] times, int percent) {
+        if (times.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(times.length * percent / 100.0) - 1;
+        return times[Math.max(index, 0)];
+    }
+
+    /** Names of the benchmarks, in the order in which they run. */
+    static final String[] BENCHMARKS = {
+        "add", "commit", "status", "log", "find-split-point", "merge",
+        "checkout", "push", "fetch", "fetch-tcp",
+    };
+
+    /** Number of characters in each line of a generated file. */
+    private static final int LINE_LENGTH = 64;
+
+    /** Directory of the remote pushed to. */
+    private static final String REMOTE = "bench-remote";
+
+    /** Directory of the clone that fetches from the remote. */
+    private static final String CLONE = "bench-clone";
+
+    /** Integer options, by name. */
+    private LinkedHashMap<String, Integer> _params =
+        new LinkedHashMap<String, Integer>();
+
+    /** Names of the benchmarks to run, or null to run all of them. */
+    private List<String> _only;
+
+    /** Source of the generated contents. */
+    private Random _random;
+
+    /** Server of the remote, or null until fetch-tcp starts it. */
+    private Server _server;
+}
@@ -9,12 +9,22 @@ import java.io.File;
  */
 public class Blob implements Serializable {
 
-    /** Creates a new Blob.
+    /** Creates a new Blob, named by the path of file in the working
+     *  directory.
      *  @param file file this blob represents
      */
     public Blob(File file) {
         _contents = Utils.readContentsAsString(file);
-        _name = file.getName();
+        _name = WorkingTree.path(file);
+    }
+
+    /** Creates a new Blob from a file name and contents.
+     *  @param name name of the file this blob represents
+     *  @param contents contents of that file
+     */
+    public Blob(String name, String contents) {
+        _contents = contents;
+        _name = name;
     }
 
     /** Returns the name of the file this blob represents.
@@ -35,21 +45,28 @@ public class Blob implements Serializable {
      *  @param blobs directory in which to save blob
      */
     public void saveBlob(File blobs) {
-        File blobFile = Utils.join(blobs, Utils.sha1(Utils.serialize(
+        File blobFile = Utils.join(blobs, Utils.hash(Utils.serialize(
                this)));
         if (!blobFile.exists()) {
             try {
                 blobFile.createNewFile();
                 Utils.writeObject(blobFile, this);
+                Maintenance.stored(blobs);
             } catch (IOException io) {
-                System.exit(0);
+                throw new GitletException();
             }
+        } else {
+            Maintenance.reused(blobFile);
         }
     }
 
+    /** Version of the serialized form, on which blob ids depend. */
+    private static final long serialVersionUID = 2345017153334762839L;
+
     /** Contents of this blob. */
     private String _contents;
 
-    /** File name of the file this blob represents. */
+    /** Path, relative to the working directory, of the file this blob
+     *  represents. */
     private String _name;
 }
@@ -16,7 +16,7 @@ public class Branch implements Serializable {
      */
     public Branch(String name, Commit head, File commits, File heads) {
         _name = name;
-        _head = Utils.sha1(Utils.serialize(head));
+        _head = Utils.hash(Utils.serialize(head));
         _commits = commits;
         _heads = heads;
     }
@@ -25,7 +25,7 @@ public class Branch implements Serializable {
      *  @param newHead new head commit
      */
     public void updateBranchHead(Commit newHead) {
-        _head = Utils.sha1(Utils.serialize(newHead));
+        _head = Utils.hash(Utils.serialize(newHead));
         saveBranch();
     }
 
@@ -36,6 +36,13 @@ public class Branch implements Serializable {
         return Utils.readObject(Utils.join(_commits, _head), Commit.class);
     }
 
+    /** Gets the hash of the head of this branch.
+     *  @return head commit hash
+     */
+    public String getHeadId() {
+        return _head;
+    }
+
     /** Gets the name of this branch.
      *  @return name of this branch
      */
@@ -55,6 +62,10 @@ public class Branch implements Serializable {
         return _heads;
     }
 
+    /** Version of the serialized form, pinned so that branches saved by
+     *  older versions still load. */
+    private static final long serialVersionUID = -2270518674498962708L;
+
     /** Name of this branch. */
     private String _name;
 
@@ -2,6 +2,7 @@ package gitlet;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Set;
 import java.text.SimpleDateFormat;
@@ -26,10 +27,10 @@ public class Commit implements Serializable {
         } else {
             _timestamp = new SimpleDateFormat("EEE LLL d HH':'mm':'ss yyyy Z").
                     format(new Date(System.currentTimeMillis()));
-            _parent = Utils.sha1(Utils.serialize(parent));
+            _parent = Utils.hash(Utils.serialize(parent));
             _mergeParent = null;
         }
-        _blobs = blobs;
+        _blobs = canonical(blobs);
     }
 
     /** Creates a new Commit from a merge.
@@ -43,9 +44,26 @@ public class Commit implements Serializable {
         _message = message;
         _timestamp = new SimpleDateFormat("EEE LLL d HH':'mm':'ss yyyy Z").
                 format(new Date(System.currentTimeMillis()));
-        _parent = Utils.sha1(Utils.serialize(parent));
-        _mergeParent = Utils.sha1(Utils.serialize(mergeParent));
-        _blobs = blobs;
+        _parent = Utils.hash(Utils.serialize(parent));
+        _mergeParent = Utils.hash(Utils.serialize(mergeParent));
+        _blobs = canonical(blobs);
+    }
+
+    /** Creates a new Commit with the given metadata, as when importing
+     *  history.
+     *  @param message commit message
+     *  @param timestamp timestamp of creation
+     *  @param parent parent commit hash, or null for a root commit
+     *  @param mergeParent second parent commit hash, or null
+     *  @param blobs mapping of file names to blob hashes
+     */
+    public Commit(String message, String timestamp, String parent,
+                  String mergeParent, HashMap<String, String> blobs) {
+        _message = message;
+        _timestamp = timestamp;
+        _parent = parent;
+        _mergeParent = mergeParent;
+        _blobs = canonical(blobs);
     }
 
     /** Returns this commit's message.
@@ -83,13 +101,13 @@ public class Commit implements Serializable {
         return _mergeParent != null;
     }
 
-    /** Checks if this and commit have the same sha1 hash.
+    /** Checks if this and commit have the same hash.
      *  @param commit commit to be checked
-     *  @return true if this and commit have the same sha1hash
+     *  @return true if this and commit have the same hash
      */
     public boolean equals(Commit commit) {
-        return Utils.sha1(Utils.serialize(this)).equals(
-                Utils.sha1(Utils.serialize(commit)));
+        return Utils.hash(Utils.serialize(this)).equals(
+                Utils.hash(Utils.serialize(commit)));
     }
 
     /** Returns the blob associated with fileName.
@@ -98,8 +116,13 @@ public class Commit implements Serializable {
      *  @return blob associated with file name
      */
     public Blob getBlob(String fileName, File blobs) {
-        return Utils.readObject(Utils.join(blobs, _blobs.get(fileName)),
-                Blob.class);
+        File blobFile = Utils.join(blobs, _blobs.get(fileName));
+        if (!blobFile.exists()) {
+            Repo.fromFile(blobs.getParentFile().getParentFile()).
+                    prefetchBlobs(Collections.singleton(_blobs.get(
+                            fileName)));
+        }
+        return Utils.readObject(blobFile, Blob.class);
     }
 
     /** Checks if this and commit have the same blob for a given file name.
@@ -139,31 +162,57 @@ public class Commit implements Serializable {
         return _blobs.keySet();
     }
 
-    /** Checks if commit is tracking blob.
-     *  @param blob blob to be checked
-     *  @return true if blob is being tracked
-     */
-    public boolean isTracking(Blob blob) {
-        return _blobs != null && _blobs.containsValue(Utils.sha1(
-                Utils.serialize(blob)));
-    }
-
     /** Checks if commit is tracking file.
      *  @param file file to be checked
      *  @return true if file is being tracked
      */
     public boolean isTrackingFile(File file) {
-        return _blobs != null && _blobs.containsKey(file.getName());
+        return _blobs != null
+            && _blobs.containsKey(WorkingTree.path(file));
     }
 
     /** Saves commit to be accessed later.
      *  @param commits directory in which to save commit
      */
     public void saveCommit(File commits) {
-        Utils.writeObject(Utils.join(commits, Utils.sha1(
+        Utils.writeObject(Utils.join(commits, Utils.hash(
                 Utils.serialize(this))), this);
+        Maintenance.stored(commits);
+    }
+
+    /** Returns a copy of a mapping of file names to blob hashes with the
+     *  table size that deserialization gives it. Both the table size and
+     *  the iteration order of a HashMap are serialized, and a map grown by
+     *  insertion can differ in both from the same map read back, which
+     *  would give a commit a hash other than the one it is saved under.
+     *  @param blobs mapping of file names to blob hashes, or null
+     *  @return copy of blobs, or null
+     */
+    private static HashMap<String, String> canonical(
+            HashMap<String, String> blobs) {
+        if (blobs == null) {
+            return null;
+        } else if (blobs.isEmpty()) {
+            return new HashMap<String, String>();
+        }
+        HashMap<String, String> copy = new HashMap<String, String>(
+                Math.max(MIN_CAPACITY, (int) (blobs.size() / LOAD_FACTOR
+                        + 1.0f)));
+        copy.putAll(blobs);
+        return copy;
     }
 
+    /** Version of the serialized form. Ids are hashes of serialized
+     *  commits, so it is pinned to keep the id of a commit the same across
+     *  versions, and old commits readable. */
+    private static final long serialVersionUID = 1300804706259764316L;
+
+    /** Smallest table size of a deserialized HashMap. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** Load factor of a HashMap. */
+    private static final float LOAD_FACTOR = 0.75f;
+
     /** Commit message. */
     private String _message;
 
@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/** The metadata of a commit without its mapping of files, stored beside
+ *  the commit so that walking history does not read the file maps.
+ *  @author Colby Chang
+ */
+public class CommitHeader implements Serializable {
+
+    /** Creates the header of a commit.
+     *  @param commit commit whose header this is
+     */
+    public CommitHeader(Commit commit) {
+        _message = commit.getMessage();
+        _timestamp = commit.getTimestamp();
+        _parent = commit.getParent();
+        _mergeParent = commit.getMergeParent();
+        try {
+            _time = new SimpleDateFormat("EEE LLL d HH':'mm':'ss yyyy Z").
+                    parse(_timestamp).getTime();
+        } catch (ParseException excp) {
+            _time = 0;
+        }
+    }
+
+    /** Returns the commit's message.
+     *  @return commit's message
+     */
+    public String getMessage() {
+        return _message;
+    }
+
+    /** Returns the commit's timestamp.
+     *  @return commit's timestamp
+     */
+    public String getTimestamp() {
+        return _timestamp;
+    }
+
+    /** Returns the commit's time.
+     *  @return milliseconds since the epoch at which the commit was made
+     */
+    public long getTime() {
+        return _time;
+    }
+
+    /** Returns the commit's parent.
+     *  @return hash of commit's parent
+     */
+    public String getParent() {
+        return _parent;
+    }
+
+    /** Returns the commit's parent from merge.
+     *  @return hash of commit's parent from merge
+     */
+    public String getMergeParent() {
+        return _mergeParent;
+    }
+
+    /** Checks if this is the header of a commit resulting from a merge.
+     *  @return true if this has a non-null merge parent
+     */
+    public boolean isMergeCommit() {
+        return _mergeParent != null;
+    }
+
+    /** Saves header to be accessed later.
+     *  @param headers directory in which to save header
+     *  @param commitHash hash of the commit this header describes
+     */
+    public void saveHeader(File headers, String commitHash) {
+        if (!headers.exists()) {
+            headers.mkdir();
+        }
+        Utils.writeObject(Utils.join(headers, commitHash), this);
+    }
+
+    /** Commit message. */
+    private String _message;
+
+    /** Timestamp of creation. */
+    private String _timestamp;
+
+    /** Time of creation, in milliseconds since the epoch. */
+    private long _time;
+
+    /** Parent commit hash. */
+    private String _parent;
+
+    /** Second parent commit from merge hash. */
+    private String _mergeParent;
+
+    /** Version of the serialized form, pinned so that saved headers
+     *  outlive changes to the methods of this class. */
+    private static final long serialVersionUID = 1564230676828736334L;
+}
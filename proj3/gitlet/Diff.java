@@ -0,0 +1,354 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line-level differencing using Myers' linear-space O(ND) algorithm.
+ *  Lines are interned into integer IDs before comparison, so the inner
+ *  loops only compare ints.
+ *  @author Colby Chang
+ */
+public class Diff {
+
+    /** A region in which lines [aStart, aEnd) of the old sequence were
+     *  replaced by lines [bStart, bEnd) of the new sequence.
+     */
+    public static class Edit {
+
+        /** Creates a new Edit.
+         *  @param aStart first replaced line of the old sequence
+         *  @param aEnd end of the replaced lines of the old sequence
+         *  @param bStart first replacing line of the new sequence
+         *  @param bEnd end of the replacing lines of the new sequence
+         */
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            _aStart = aStart;
+            _aEnd = aEnd;
+            _bStart = bStart;
+            _bEnd = bEnd;
+        }
+
+        /** Returns the first replaced line of the old sequence. */
+        public int aStart() {
+            return _aStart;
+        }
+
+        /** Returns the end of the replaced lines of the old sequence. */
+        public int aEnd() {
+            return _aEnd;
+        }
+
+        /** Returns the first replacing line of the new sequence. */
+        public int bStart() {
+            return _bStart;
+        }
+
+        /** Returns the end of the replacing lines of the new sequence. */
+        public int bEnd() {
+            return _bEnd;
+        }
+
+        /** Bounds of this edit. */
+        private final int _aStart, _aEnd, _bStart, _bEnd;
+    }
+
+    /** Table that interns lines into dense integer IDs. */
+    public static class LineTable {
+
+        /** Returns the IDs of the given lines, assigning new IDs to lines
+         *  not seen before.
+         *  @param lines lines to be interned
+         *  @return ID of each line
+         */
+        public int[] intern(String[] lines) {
+            int[] ids = new int[lines.length];
+            for (int i = 0; i < lines.length; i += 1) {
+                Integer id = _ids.get(lines[i]);
+                if (id == null) {
+                    id = _ids.size();
+                    _ids.put(lines[i], id);
+                }
+                ids[i] = id;
+            }
+            return ids;
+        }
+
+        /** Mapping of lines to their IDs. */
+        private HashMap<String, Integer> _ids =
+                new HashMap<String, Integer>();
+    }
+
+    /** Splits contents into lines, without their line terminators. A
+     *  trailing newline does not start an extra, empty line.
+     *  @param contents text to be split
+     *  @return lines of contents
+     */
+    public static String[] lines(String contents) {
+        if (contents.isEmpty()) {
+            return new String[0];
+        }
+        String[] lines = contents.split("\n", -1);
+        if (contents.endsWith("\n")) {
+            return Arrays.copyOf(lines, lines.length - 1);
+        }
+        return lines;
+    }
+
+    /** Returns the shortest edit script that turns a into b.
+     *  @param a IDs of the old lines
+     *  @param b IDs of the new lines
+     *  @return edits, in increasing order of position
+     */
+    public static ArrayList<Edit> diff(int[] a, int[] b) {
+        boolean[] aChanged = new boolean[a.length];
+        boolean[] bChanged = new boolean[b.length];
+        compare(a, 0, a.length, b, 0, b.length, aChanged, bChanged);
+        ArrayList<Edit> edits = new ArrayList<Edit>();
+        int i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length
+                    && !aChanged[i] && !bChanged[j]) {
+                i += 1;
+                j += 1;
+            } else {
+                int aStart = i, bStart = j;
+                while (i < a.length && aChanged[i]) {
+                    i += 1;
+                }
+                while (j < b.length && bChanged[j]) {
+                    j += 1;
+                }
+                edits.add(new Edit(aStart, i, bStart, j));
+            }
+        }
+        return edits;
+    }
+
+    /** Returns the differences between a and b in unified format, with
+     *  CONTEXT lines of context around each change.
+     *  @param aName name of the old file, or null if it did not exist
+     *  @param bName name of the new file, or null if it does not exist
+     *  @param aText contents of the old file
+     *  @param bText contents of the new file
+     *  @return unified diff, empty if the contents are the same
+     */
+    public static String unified(String aName, String bName, String aText,
+                                 String bText) {
+        String[] a = lines(aText), b = lines(bText);
+        boolean aNoEol = !aText.isEmpty() && !aText.endsWith("\n");
+        boolean bNoEol = !bText.isEmpty() && !bText.endsWith("\n");
+        LineTable table = new LineTable();
+        ArrayList<Edit> edits = diff(table.intern(keys(a, aNoEol)),
+                table.intern(keys(b, bNoEol)));
+        if (edits.isEmpty()) {
+            return "";
+        }
+        String name = bName == null ? aName : bName;
+        StringBuilder out = new StringBuilder();
+        out.append("diff --git a/").append(name).append(" b/").append(name).
+                append("\n");
+        out.append(aName == null ? "--- /dev/null" : "--- a/" + aName).
+                append("\n");
+        out.append(bName == null ? "+++ /dev/null" : "+++ b/" + bName).
+                append("\n");
+        int k = 0;
+        while (k < edits.size()) {
+            int first = k;
+            while (k + 1 < edits.size() && edits.get(k + 1).aStart()
+                    - edits.get(k).aEnd() <= 2 * CONTEXT) {
+                k += 1;
+            }
+            appendHunk(out, a, b, edits.subList(first, k + 1), aNoEol,
+                    bNoEol);
+            k += 1;
+        }
+        return out.toString();
+    }
+
+    /** Returns the lines of a file as they are compared. A last line
+     *  lacking its newline differs from the same text with one, so a
+     *  change to the final newline removes and adds that line.
+     *  @param lines lines of the file
+     *  @param noEol true if the file lacks a final newline
+     *  @return the lines, the last marked by a newline if noEol
+     */
+    private static String[] keys(String[] lines, boolean noEol) {
+        if (!noEol) {
+            return lines;
+        }
+        String[] keys = lines.clone();
+        keys[keys.length - 1] += "\n";
+        return keys;
+    }
+
+    /** Appends one hunk covering the given edits.
+     *  @param out destination
+     *  @param a old lines
+     *  @param b new lines
+     *  @param edits edits of the hunk, in order
+     *  @param aNoEol true if a lacks a final newline
+     *  @param bNoEol true if b lacks a final newline
+     */
+    private static void appendHunk(StringBuilder out, String[] a, String[] b,
+                                   List<Edit> edits, boolean aNoEol,
+                                   boolean bNoEol) {
+        Edit first = edits.get(0), last = edits.get(edits.size() - 1);
+        int aLo = Math.max(0, first.aStart() - CONTEXT);
+        int bLo = Math.max(0, first.bStart() - CONTEXT);
+        int aHi = Math.min(a.length, last.aEnd() + CONTEXT);
+        int bHi = Math.min(b.length, last.bEnd() + CONTEXT);
+        out.append("@@ -").append(range(aLo, aHi)).append(" +").
+                append(range(bLo, bHi)).append(" @@\n");
+        int i = aLo;
+        for (Edit edit : edits) {
+            for (; i < edit.aStart(); i += 1) {
+                appendLine(out, ' ', a[i], aNoEol && i == a.length - 1);
+            }
+            for (int j = edit.aStart(); j < edit.aEnd(); j += 1) {
+                appendLine(out, '-', a[j], aNoEol && j == a.length - 1);
+            }
+            for (int j = edit.bStart(); j < edit.bEnd(); j += 1) {
+                appendLine(out, '+', b[j], bNoEol && j == b.length - 1);
+            }
+            i = edit.aEnd();
+        }
+        for (; i < aHi; i += 1) {
+            appendLine(out, ' ', a[i], aNoEol && i == a.length - 1);
+        }
+    }
+
+    /** Appends a single line of a hunk.
+     *  @param out destination
+     *  @param tag ' ', '-' or '+'
+     *  @param line text of the line
+     *  @param noEol true if the line lacks a final newline
+     */
+    private static void appendLine(StringBuilder out, char tag, String line,
+                                   boolean noEol) {
+        out.append(tag).append(line).append("\n");
+        if (noEol) {
+            out.append("\\ No newline at end of file\n");
+        }
+    }
+
+    /** Returns the range [lo, hi) in hunk header notation.
+     *  @param lo first line, counting from 0
+     *  @param hi end of the range
+     *  @return "START,COUNT", counting lines from 1
+     */
+    private static String range(int lo, int hi) {
+        if (hi == lo) {
+            return lo + ",0";
+        }
+        return (lo + 1) + "," + (hi - lo);
+    }
+
+    /** Marks the lines of a[aLo, aHi) and b[bLo, bHi) that are not part of
+     *  a longest common subsequence.
+     *  @param a old lines
+     *  @param aLo start of the old range
+     *  @param aHi end of the old range
+     *  @param b new lines
+     *  @param bLo start of the new range
+     *  @param bHi end of the new range
+     *  @param aChanged set for every deleted line of a
+     *  @param bChanged set for every inserted line of b
+     */
+    private static void compare(int[] a, int aLo, int aHi,
+                                int[] b, int bLo, int bHi,
+                                boolean[] aChanged, boolean[] bChanged) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(bChanged, bLo, bHi, true);
+        } else if (bLo == bHi) {
+            Arrays.fill(aChanged, aLo, aHi, true);
+        } else {
+            int[] mid = middleSnake(a, aLo, aHi, b, bLo, bHi);
+            if ((mid[0] == aLo && mid[1] == bLo)
+                    || (mid[0] == aHi && mid[1] == bHi)) {
+                Arrays.fill(aChanged, aLo, aHi, true);
+                Arrays.fill(bChanged, bLo, bHi, true);
+                return;
+            }
+            compare(a, aLo, mid[0], b, bLo, mid[1], aChanged, bChanged);
+            compare(a, mid[0], aHi, b, mid[1], bHi, aChanged, bChanged);
+        }
+    }
+
+    /** Finds a point on a shortest edit path between a[aLo, aHi) and
+     *  b[bLo, bHi) that splits it into two paths of about equal cost.
+     *  @param a old lines
+     *  @param aLo start of the old range
+     *  @param aHi end of the old range
+     *  @param b new lines
+     *  @param bLo start of the new range
+     *  @param bHi end of the new range
+     *  @return the split point, as {index in a, index in b}
+     */
+    private static int[] middleSnake(int[] a, int aLo, int aHi,
+                                     int[] b, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        int[] vf = new int[2 * max + 3];
+        int[] vb = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vf[offset + k - 1]
+                        < vf[offset + k + 1])) {
+                    x = vf[offset + k + 1];
+                } else {
+                    x = vf[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[offset + k] = x;
+                int r = delta - k;
+                if (odd && r >= -(d - 1) && r <= d - 1
+                        && x + vb[offset + r] >= n) {
+                    return new int[] {aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vb[offset + k - 1]
+                        < vb[offset + k + 1])) {
+                    x = vb[offset + k + 1];
+                } else {
+                    x = vb[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m
+                        && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[offset + k] = x;
+                int f = delta - k;
+                if (!odd && f >= -d && f <= d
+                        && x + vf[offset + f] >= n) {
+                    return new int[] {aHi - x, bHi - y};
+                }
+            }
+        }
+        return new int[] {aLo, bLo};
+    }
+
+    /** Number of lines of context around each change in unified output. */
+    static final int CONTEXT = 3;
+}
@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+
+/** The entries of a directory, read one at a time from a DirectoryStream
+ *  rather than gathered into an array, so that walking a directory of
+ *  millions of objects takes constant memory. Entries come in no
+ *  particular order. Meant for try-with-resources:
+ *
+ *    try (DirectoryFiles files = new DirectoryFiles(dir)) {
+ *        for (File file : files) { ... }
+ *    }
+ *
+ *  A directory that cannot be read has no entries.
+ *  @author Colby Chang
+ */
+class DirectoryFiles implements Iterable<File>, AutoCloseable {
+
+    /** Opens a directory.
+     *  @param dir the directory
+     */
+    DirectoryFiles(File dir) {
+        _start = Trace.start();
+        try {
+            _stream = Files.newDirectoryStream(dir.toPath());
+        } catch (IOException excp) {
+            _stream = null;
+        }
+    }
+
+    @Override
+    public Iterator<File> iterator() {
+        if (_stream == null) {
+            return Collections.emptyIterator();
+        }
+        Iterator<Path> paths = _stream.iterator();
+        return new Iterator<File>() {
+            @Override
+            public boolean hasNext() {
+                return paths.hasNext();
+            }
+
+            @Override
+            public File next() {
+                _entries += 1;
+                return paths.next().toFile();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (_stream == null) {
+            return;
+        }
+        try {
+            _stream.close();
+        } catch (IOException excp) {
+            return;
+        } finally {
+            _stream = null;
+            Trace.record(Trace.LIST_FILES, _start, _entries);
+        }
+    }
+
+    /** Stream over the entries, or null if closed or unreadable. */
+    private DirectoryStream<Path> _stream;
+
+    /** Time at which the directory was opened. */
+    private long _start;
+
+    /** Number of entries read so far. */
+    private long _entries;
+}
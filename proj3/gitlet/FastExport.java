@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Writer of the history of branches as a fast-import stream, which
+ *  FastImport reads back. Commits are written parents first, each as the
+ *  changes from its first parent, and every blob is written once.
+ *  @author Colby Chang
+ */
+public class FastExport {
+
+    /** Creates a new FastExport.
+     *  @param repo repository whose history is exported
+     */
+    public FastExport(Repo repo) {
+        _repo = repo;
+        _shallow = repo.getShallow();
+    }
+
+    /** Writes the history of the given branches to standard output.
+     *  @param heads mapping of branch names to their head commit hashes
+     */
+    public void export(LinkedHashMap<String, String> heads) {
+        ArrayList<String> order = new ArrayList<String>();
+        HashMap<String, String> refs = new HashMap<String, String>();
+        for (String branch : heads.keySet()) {
+            sortHistory(heads.get(branch), branch, order, refs);
+        }
+        _out = new BufferedOutputStream(System.out, Repo.OUTPUT_BUFFER_SIZE);
+        try {
+            String previousId = null;
+            Commit previous = null;
+            for (String id : order) {
+                Commit commit = _repo.readCommit(id);
+                ArrayList<String> parents = parents(id);
+                Commit parent = null;
+                if (parents.isEmpty()) {
+                    write("reset " + refs.get(id) + "\n");
+                } else if (parents.get(0).equals(previousId)) {
+                    parent = previous;
+                } else {
+                    parent = _repo.readCommit(parents.get(0));
+                }
+                writeCommit(id, commit, refs.get(id), parents, parent);
+                previousId = id;
+                previous = commit;
+            }
+            for (String branch : heads.keySet()) {
+                write("reset " + branch + "\nfrom :"
+                        + _marks.get(heads.get(branch)) + "\n\n");
+            }
+            _out.flush();
+        } catch (IOException excp) {
+            throw new GitletException();
+        }
+    }
+
+    /** Adds the commits reachable from head that are not in order yet to
+     *  order, each after its parents.
+     *  @param head hash of the head commit
+     *  @param branch name of the branch whose head it is
+     *  @param order commit hashes, parents first
+     *  @param refs mapping of commit hashes to the branch through which
+     *              they were first reached
+     */
+    private void sortHistory(String head, String branch,
+                             ArrayList<String> order,
+                             HashMap<String, String> refs) {
+        ArrayDeque<String> stack = new ArrayDeque<String>();
+        stack.push(head);
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (refs.containsKey(id)) {
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (String parent : parents(id)) {
+                if (!refs.containsKey(parent)) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                refs.put(id, branch);
+                order.add(id);
+            }
+        }
+    }
+
+    /** Returns the parents of a commit that are stored in the repository.
+     *  @param id commit hash
+     *  @return hashes of its first parent and merge parent, if present
+     */
+    private ArrayList<String> parents(String id) {
+        ArrayList<String> parents = _parents.get(id);
+        if (parents != null) {
+            return parents;
+        }
+        parents = new ArrayList<String>();
+        _parents.put(id, parents);
+        if (_shallow.contains(id)) {
+            return parents;
+        }
+        CommitHeader header = _repo.getHeader(id);
+        if (header.getParent() != null
+                && _repo.hasCommit(header.getParent())) {
+            parents.add(header.getParent());
+            if (header.getMergeParent() != null
+                    && _repo.hasCommit(header.getMergeParent())) {
+                parents.add(header.getMergeParent());
+            }
+        }
+        return parents;
+    }
+
+    /** Writes a commit, preceded by the blobs it adds that have not been
+     *  written yet.
+     *  @param id commit hash
+     *  @param commit the commit
+     *  @param ref branch through which the commit was first reached
+     *  @param parents hashes of the parents written with the commit
+     *  @param parent first parent, or null if it has none
+     *  @throws IOException if the output cannot be written
+     */
+    private void writeCommit(String id, Commit commit, String ref,
+                             ArrayList<String> parents, Commit parent)
+        throws IOException {
+        TreeMap<String, String> changes = new TreeMap<String, String>();
+        if (commit.hasBlobs()) {
+            for (String fileName : commit.getFileNames()) {
+                String hash = commit.getBlobHash(fileName);
+                if (parent == null || !parent.hasBlobs()
+                        || !hash.equals(parent.getBlobHash(fileName))) {
+                    changes.put(fileName, hash);
+                }
+            }
+        }
+        if (parent != null && parent.hasBlobs()) {
+            for (String fileName : parent.getFileNames()) {
+                if (!commit.isTrackingFile(new File(fileName))) {
+                    changes.put(fileName, null);
+                }
+            }
+        }
+        for (String hash : changes.values()) {
+            if (hash != null && !_marks.containsKey(hash)) {
+                _marks.put(hash, _marks.size() + 1);
+                write("blob\nmark :" + _marks.get(hash) + "\n");
+                writeData(_repo.readBlob(hash).getContents());
+            }
+        }
+        _marks.put(id, _marks.size() + 1);
+        write("commit " + ref + "\nmark :" + _marks.get(id) + "\ndate "
+                + commit.getTimestamp() + "\n");
+        writeData(commit.getMessage());
+        if (parents.size() > 0) {
+            write("from :" + _marks.get(parents.get(0)) + "\n");
+        }
+        if (parents.size() > 1) {
+            write("merge :" + _marks.get(parents.get(1)) + "\n");
+        }
+        for (String fileName : changes.keySet()) {
+            String hash = changes.get(fileName);
+            if (hash == null) {
+                write("D " + fileName + "\n");
+            } else {
+                write("M :" + _marks.get(hash) + " " + fileName + "\n");
+            }
+        }
+        write("\n");
+    }
+
+    /** Writes a data command holding text.
+     *  @param text contents to be written
+     *  @throws IOException if the output cannot be written
+     */
+    private void writeData(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        write("data " + bytes.length + "\n");
+        _out.write(bytes);
+        write("\n");
+    }
+
+    /** Writes a line of the stream.
+     *  @param text text to be written
+     *  @throws IOException if the output cannot be written
+     */
+    private void write(String text) throws IOException {
+        _out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Repository whose history is exported. */
+    private Repo _repo;
+
+    /** Hashes of the shallow boundary commits. */
+    private Set<String> _shallow;
+
+    /** Parents of the commits visited so far, by hash. */
+    private HashMap<String, ArrayList<String>> _parents =
+        new HashMap<String, ArrayList<String>>();
+
+    /** Marks of the commits and blobs written so far, by hash. */
+    private HashMap<String, Integer> _marks = new HashMap<String, Integer>();
+
+    /** Destination of the stream. */
+    private OutputStream _out;
+}
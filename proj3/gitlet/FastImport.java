@@ -0,0 +1,489 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Reader of a fast-import stream, which writes the commits and blobs it
+ *  describes straight into the object store, bypassing the staging area
+ *  and the working directory. The stream is a sequence of commands:
+ *  <pre>
+ *  blob
+ *  mark :MARK
+ *  data SIZE
+ *  (SIZE bytes of contents)
+ *
+ *  commit BRANCH
+ *  mark :MARK
+ *  date TIMESTAMP
+ *  data SIZE
+ *  (SIZE bytes of message)
+ *  from REF
+ *  merge REF
+ *  M :MARK PATH | M BLOBHASH PATH | M inline PATH, then data SIZE ...
+ *  D PATH
+ *  deleteall
+ *
+ *  reset BRANCH
+ *  from REF
+ *  </pre>
+ *  A REF is a :MARK, a commit hash or a branch name. Every line but the
+ *  command itself is optional. Without "from", a commit continues its
+ *  branch, and a "reset" without "from" makes the next commit on the
+ *  branch a root. Branches are updated once, at the end.
+ *  @author Colby Chang
+ */
+public class FastImport {
+
+    /** Creates a new FastImport.
+     *  @param repo repository into which history is imported
+     */
+    public FastImport(Repo repo) {
+        _repo = repo;
+    }
+
+    /** Imports the stream read from in, then prints how much was imported
+     *  and how fast.
+     *  @param in source of the stream
+     */
+    public void run(InputStream in) {
+        long start = System.nanoTime();
+        _in = new BufferedInputStream(in, Repo.OUTPUT_BUFFER_SIZE);
+        try {
+            String line = readLine();
+            while (line != null) {
+                if (line.isEmpty()) {
+                    line = readLine();
+                } else if (line.equals("blob")) {
+                    line = readBlob();
+                } else if (line.startsWith("commit ")) {
+                    line = readCommit(line.substring("commit ".length()));
+                } else if (line.startsWith("reset ")) {
+                    line = readReset(line.substring("reset ".length()));
+                } else {
+                    throw malformed();
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not read the fast-import stream.");
+        }
+        _writers.shutdown();
+        try {
+            _writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException excp) {
+            throw new GitletException();
+        }
+        if (_failure.get() != null) {
+            throw Utils.error("Could not write the imported objects: %s",
+                    _failure.get().getMessage());
+        }
+        for (String branch : _tips.keySet()) {
+            Commit tip = _tips.get(branch);
+            if (tip != null) {
+                new Branch(branch, tip, _repo.getCommits(),
+                        _repo.getHeads()).saveBranch();
+            }
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        System.out.println(String.format("Imported %d commits and %d blobs "
+                + "in %.2f s: %.0f commits/s.", _numCommits, _numBlobs,
+                seconds, _numCommits / seconds));
+    }
+
+    /** Reads a blob command, after its first line.
+     *  @return the line after the command
+     *  @throws IOException if the stream cannot be read
+     */
+    private String readBlob() throws IOException {
+        String line = readLine();
+        String mark = null;
+        if (line != null && line.startsWith("mark ")) {
+            mark = line.substring("mark ".length());
+            line = readLine();
+        }
+        String contents = readData(line);
+        if (mark != null) {
+            _blobMarks.put(mark, contents);
+        }
+        return readLine();
+    }
+
+    /** Reads a commit command, after its first line, and saves the
+     *  commit.
+     *  @param branch branch to which the commit is added
+     *  @return the line after the command
+     *  @throws IOException if the stream cannot be read
+     */
+    private String readCommit(String branch) throws IOException {
+        String line = readLine();
+        String mark = null;
+        if (line != null && line.startsWith("mark ")) {
+            mark = line.substring("mark ".length());
+            line = readLine();
+        }
+        String timestamp;
+        if (line != null && line.startsWith("date ")) {
+            timestamp = line.substring("date ".length());
+            line = readLine();
+        } else {
+            timestamp = new SimpleDateFormat("EEE LLL d HH':'mm':'ss yyyy Z").
+                    format(new Date());
+        }
+        String message = readData(line);
+        line = readLine();
+        Commit parent = tip(branch);
+        String parentId = _tipIds.get(branch);
+        if (line != null && line.startsWith("from ")) {
+            String from = resolve(line.substring("from ".length()));
+            if (!from.equals(parentId)) {
+                parentId = from;
+                parent = loadCommit(from);
+            }
+            line = readLine();
+        }
+        String mergeParentId = null;
+        if (line != null && line.startsWith("merge ")) {
+            mergeParentId = resolve(line.substring("merge ".length()));
+            line = readLine();
+        }
+        HashMap<String, String> blobs = null;
+        if (parent != null && parent.hasBlobs()) {
+            blobs = new HashMap<String, String>();
+            for (String fileName : parent.getFileNames()) {
+                blobs.put(fileName, parent.getBlobHash(fileName));
+            }
+        }
+        while (line != null && (line.startsWith("M ")
+                || line.startsWith("D ") || line.equals("deleteall"))) {
+            if (blobs == null) {
+                blobs = new HashMap<String, String>();
+            }
+            if (line.equals("deleteall")) {
+                blobs.clear();
+            } else if (line.startsWith("D ")) {
+                blobs.remove(line.substring("D ".length()));
+            } else {
+                readModify(line, blobs);
+            }
+            line = readLine();
+        }
+        if (blobs == null && parent != null) {
+            blobs = new HashMap<String, String>();
+        }
+        Commit commit = new Commit(message, timestamp, parentId,
+                mergeParentId, blobs);
+        byte[] bytes = Utils.serialize(commit);
+        String id = Utils.hash(bytes);
+        if (write(_repo.getCommits(), id, commit, bytes)) {
+            _numCommits += 1;
+        }
+        if (mark != null) {
+            _commitMarks.put(mark, id);
+        }
+        _tips.put(branch, commit);
+        _tipIds.put(branch, id);
+        return line;
+    }
+
+    /** Reads a file modification of a commit.
+     *  @param line the "M" line
+     *  @param blobs mapping of file names to blob hashes to be updated
+     *  @throws IOException if the stream cannot be read
+     */
+    private void readModify(String line, HashMap<String, String> blobs)
+        throws IOException {
+        int space = line.indexOf(' ', 2);
+        if (space < 0) {
+            throw malformed();
+        }
+        String ref = line.substring(2, space);
+        String fileName = line.substring(space + 1);
+        String contents;
+        if (ref.equals("inline")) {
+            contents = readData(readLine());
+        } else if (ref.startsWith(":")) {
+            contents = _blobMarks.get(ref);
+            if (contents == null) {
+                throw malformed();
+            }
+            String key = ref + " " + fileName;
+            String hash = _savedMarks.get(key);
+            if (hash == null) {
+                hash = saveBlob(fileName, contents);
+                _savedMarks.put(key, hash);
+            }
+            blobs.put(fileName, hash);
+            return;
+        } else if (_pending.get(ref) instanceof Blob
+                || Utils.join(_repo.getBlobs(), ref).exists()) {
+            Blob blob = (Blob) _pending.get(ref);
+            if (blob == null) {
+                blob = _repo.readBlob(ref);
+            }
+            if (blob.getName().equals(fileName)) {
+                blobs.put(fileName, ref);
+                return;
+            }
+            contents = blob.getContents();
+        } else {
+            throw malformed();
+        }
+        blobs.put(fileName, saveBlob(fileName, contents));
+    }
+
+    /** Reads a reset command, after its first line.
+     *  @param branch branch to be reset
+     *  @return the line after the command
+     *  @throws IOException if the stream cannot be read
+     */
+    private String readReset(String branch) throws IOException {
+        String line = readLine();
+        String id = null;
+        if (line != null && line.startsWith("from ")) {
+            id = resolve(line.substring("from ".length()));
+            line = readLine();
+        }
+        _tips.put(branch, id == null ? null : loadCommit(id));
+        _tipIds.put(branch, id);
+        return line;
+    }
+
+    /** Saves a blob unless it is already stored.
+     *  @param fileName name of the file
+     *  @param contents contents of the file
+     *  @return hash of the blob
+     */
+    private String saveBlob(String fileName, String contents) {
+        Blob blob = new Blob(fileName, contents);
+        byte[] bytes = Utils.serialize(blob);
+        String hash = Utils.hash(bytes);
+        if (write(_repo.getBlobs(), hash, blob, bytes)) {
+            _numBlobs += 1;
+        }
+        return hash;
+    }
+
+    /** Writes an object unless it is already stored, in which case the
+     *  stored one is marked as reused. Writes are handed to
+     *  a pool of threads, since creating many small files is bound by the
+     *  latency of the file system rather than by this thread; until its
+     *  file is written, the object is kept in _pending. The first write
+     *  to fail is kept in _failure, and reported once the pool is done.
+     *  @param dir directory of objects
+     *  @param hash hash of the object
+     *  @param obj the object
+     *  @param bytes serialized object
+     *  @return true if the object was not stored yet
+     */
+    private boolean write(File dir, String hash, Serializable obj,
+                          byte[] bytes) {
+        File file = Utils.join(dir, hash);
+        if (!_written.add(hash)) {
+            return false;
+        } else if (file.exists()) {
+            Maintenance.reused(file);
+            return false;
+        }
+        _pending.put(hash, obj);
+        Maintenance.stored(dir);
+        _writers.execute(() -> {
+            try {
+                Utils.writeContents(file, bytes);
+                _pending.remove(hash);
+            } catch (RuntimeException excp) {
+                _failure.compareAndSet(null, excp);
+            }
+        });
+        return true;
+    }
+
+    /** Reads a commit that is stored or being written.
+     *  @param id commit hash
+     *  @return commit with that hash
+     */
+    private Commit loadCommit(String id) {
+        Serializable pending = _pending.get(id);
+        if (pending instanceof Commit) {
+            return (Commit) pending;
+        }
+        return _repo.readCommit(id);
+    }
+
+    /** Returns the commit at the tip of a branch, recording its hash in
+     *  _tipIds.
+     *  @param branch branch name
+     *  @return the last commit imported to branch, its head in the
+     *          repository if none was, or null if it has neither or was
+     *          reset without a commit
+     */
+    private Commit tip(String branch) {
+        if (!_tips.containsKey(branch)) {
+            File branchFile = Utils.join(_repo.getHeads(), branch);
+            if (branchFile.isFile()) {
+                Branch head = Utils.readObject(branchFile, Branch.class);
+                _tips.put(branch, head.getHead());
+                _tipIds.put(branch, head.getHeadId());
+            } else {
+                _tips.put(branch, null);
+                _tipIds.put(branch, null);
+            }
+        }
+        return _tips.get(branch);
+    }
+
+    /** Returns the hash of the commit named by a reference.
+     *  @param ref a :MARK, a commit hash or a branch name
+     *  @return commit hash
+     */
+    private String resolve(String ref) {
+        String id;
+        if (ref.startsWith(":")) {
+            id = _commitMarks.get(ref);
+        } else if (_pending.get(ref) instanceof Commit
+                || _repo.hasCommit(ref)) {
+            id = ref;
+        } else {
+            tip(ref);
+            id = _tipIds.get(ref);
+        }
+        if (id == null) {
+            throw malformed();
+        }
+        return id;
+    }
+
+    /** Reads a data command and the contents that follow it, along with
+     *  the optional newline after them.
+     *  @param line the "data" line
+     *  @return the contents
+     *  @throws IOException if the stream cannot be read
+     */
+    private String readData(String line) throws IOException {
+        if (line == null || !line.startsWith("data ")) {
+            throw malformed();
+        }
+        int size;
+        try {
+            size = Integer.parseInt(line.substring("data ".length()));
+        } catch (NumberFormatException excp) {
+            throw malformed();
+        }
+        byte[] bytes = new byte[size];
+        int n = 0;
+        while (n < size) {
+            int read = _in.read(bytes, n, size - n);
+            if (read < 0) {
+                throw malformed();
+            }
+            n += read;
+        }
+        _in.mark(1);
+        if (_in.read() != '\n') {
+            _in.reset();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Reads a line, without its newline.
+     *  @return the line, or null at the end of the stream
+     *  @throws IOException if the stream cannot be read
+     */
+    private String readLine() throws IOException {
+        _line.reset();
+        int c = _in.read();
+        if (c < 0) {
+            return null;
+        }
+        while (c >= 0 && c != '\n') {
+            _line.write(c);
+            c = _in.read();
+        }
+        _lineNumber += 1;
+        return new String(_line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the error for a malformed stream, which tells where it
+     *  went wrong.
+     *  @return error to be thrown
+     */
+    private GitletException malformed() {
+        return Utils.error("Malformed fast-import stream at line %d.",
+                _lineNumber);
+    }
+
+    /** Repository into which history is imported. */
+    private Repo _repo;
+
+    /** Source of the stream. */
+    private BufferedInputStream _in;
+
+    /** Buffer holding the line being read. */
+    private ByteArrayOutputStream _line = new ByteArrayOutputStream();
+
+    /** Number of lines read. */
+    private int _lineNumber;
+
+    /** Contents of the marked blobs, by mark. */
+    private HashMap<String, String> _blobMarks = new HashMap<String, String>();
+
+    /** Hashes of the blobs saved for each marked blob and file name. */
+    private HashMap<String, String> _savedMarks =
+        new HashMap<String, String>();
+
+    /** Hashes of the marked commits, by mark. */
+    private HashMap<String, String> _commitMarks =
+        new HashMap<String, String>();
+
+    /** Last commit imported to each branch, or null if the branch was reset
+     *  without a commit. */
+    private LinkedHashMap<String, Commit> _tips =
+        new LinkedHashMap<String, Commit>();
+
+    /** Hashes of the commits in _tips. */
+    private HashMap<String, String> _tipIds = new HashMap<String, String>();
+
+    /** Hashes of the objects written or found during this import. */
+    private HashSet<String> _written = new HashSet<String>();
+
+    /** Objects handed to _writers whose files are not written yet. */
+    private ConcurrentHashMap<String, Serializable> _pending =
+        new ConcurrentHashMap<String, Serializable>();
+
+    /** First failure of a write handed to _writers, if any. */
+    private AtomicReference<RuntimeException> _failure =
+        new AtomicReference<RuntimeException>();
+
+    /** Daemon threads that write objects, with a bounded backlog beyond
+     *  which the reading thread writes objects itself. */
+    private ThreadPoolExecutor _writers = new ThreadPoolExecutor(WRITERS,
+            WRITERS, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(WRITE_BACKLOG), runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+    /** Number of threads writing objects. */
+    private static final int WRITERS = Math.max(2,
+            Runtime.getRuntime().availableProcessors());
+
+    /** Maximum number of objects waiting to be written. */
+    private static final int WRITE_BACKLOG = 4096;
+
+    /** Numbers of commits and blobs written. */
+    private int _numCommits, _numBlobs;
+}
@@ -0,0 +1,195 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Cache of the contents of the files in a gitlet folder, used while many
+ *  commands run in one process. Reads are served from memory, and
+ *  overwrites of existing files are held in memory until flush, so state
+ *  that every command rewrites, such as the repository, the staging area
+ *  and the branches, reaches the disk once per checkpoint. Files are
+ *  created and deleted on disk immediately, so that checks for their
+ *  existence and listings of directories stay accurate. Its methods are
+ *  synchronized, since objects are read from parallel streams. Together
+ *  the cached contents are kept within a budget, a quarter of the heap
+ *  unless the GITLET_MEMORY environment variable gives a number of bytes,
+ *  optionally suffixed by k, m or g: deferred writes are flushed early
+ *  once they take half of it, and clean contents are evicted beyond what
+ *  they leave.
+ *  @author Colby Chang
+ */
+class FileCache {
+
+    /** Starts caching the files in a gitlet folder.
+     *  @param gitletFolder folder whose files are cached
+     */
+    static synchronized void enable(File gitletFolder) {
+        _root = gitletFolder.getAbsoluteFile().toPath().normalize().
+                toString() + File.separator;
+    }
+
+    /** Returns the cached contents of a file.
+     *  @param file file to be read
+     *  @return its contents, or null if they are not cached
+     */
+    static synchronized byte[] get(File file) {
+        String key = key(file);
+        if (key == null) {
+            return null;
+        }
+        byte[] contents = _dirty.get(key);
+        if (contents == null) {
+            contents = _clean.get(key);
+        }
+        if (contents != null && !file.isFile()) {
+            forget(key);
+            return null;
+        }
+        return contents;
+    }
+
+    /** Records the contents just read from a file.
+     *  @param file file that was read
+     *  @param contents its contents
+     */
+    static synchronized void remember(File file, byte[] contents) {
+        String key = key(file);
+        if (key != null && !_dirty.containsKey(key)) {
+            addClean(key, contents);
+        }
+    }
+
+    /** Holds a write to a file in memory if the file already exists, and
+     *  otherwise records the contents about to be written to it.
+     *  @param file file to be written
+     *  @param contents contents to be written
+     *  @return true if the write is deferred, false if the caller must
+     *          write the file now
+     */
+    static synchronized boolean put(File file, byte[] contents) {
+        String key = key(file);
+        if (key == null) {
+            return false;
+        }
+        forget(key);
+        if (!_flushing && file.isFile()) {
+            if (_dirtyBytes + contents.length > BUDGET / 2) {
+                flush();
+            }
+            _dirty.put(key, contents);
+            _dirtyBytes += contents.length;
+            return true;
+        }
+        addClean(key, contents);
+        return false;
+    }
+
+    /** Writes every deferred write whose file still exists. */
+    static synchronized void flush() {
+        HashMap<String, byte[]> dirty = _dirty;
+        _dirty = new HashMap<String, byte[]>();
+        _dirtyBytes = 0;
+        _flushing = true;
+        try {
+            for (Map.Entry<String, byte[]> entry : dirty.entrySet()) {
+                File file = new File(entry.getKey());
+                if (file.isFile()) {
+                    Utils.writeContents(file, entry.getValue());
+                }
+            }
+        } finally {
+            _flushing = false;
+        }
+    }
+
+    /** Returns the key under which a file is cached.
+     *  @param file file
+     *  @return its normalized absolute path, or null if caching is off or
+     *          file is not in the cached gitlet folder
+     */
+    private static String key(File file) {
+        if (_root == null) {
+            return null;
+        }
+        String key = file.getAbsoluteFile().toPath().normalize().toString();
+        return key.startsWith(_root) ? key : null;
+    }
+
+    /** Removes a file from the cache.
+     *  @param key key of the file
+     */
+    private static void forget(String key) {
+        byte[] old = _dirty.remove(key);
+        if (old != null) {
+            _dirtyBytes -= old.length;
+        }
+        old = _clean.remove(key);
+        if (old != null) {
+            _cleanBytes -= old.length;
+        }
+    }
+
+    /** Adds contents that match the disk, evicting the least recently
+     *  used ones beyond the part of BUDGET that deferred writes leave.
+     *  @param key key of the file
+     *  @param contents its contents
+     */
+    private static void addClean(String key, byte[] contents) {
+        byte[] old = _clean.put(key, contents);
+        if (old != null) {
+            _cleanBytes -= old.length;
+        }
+        _cleanBytes += contents.length;
+        Iterator<byte[]> lru = _clean.values().iterator();
+        while (_cleanBytes > BUDGET - _dirtyBytes && lru.hasNext()) {
+            _cleanBytes -= lru.next().length;
+            lru.remove();
+        }
+    }
+
+    /** Parses a size in bytes.
+     *  @param size the size, a number optionally followed by k, m or g,
+     *              or null
+     *  @param otherwise size returned if size is null or malformed
+     *  @return the number of bytes
+     */
+    static long parseSize(String size, long otherwise) {
+        if (size == null || !size.matches("(?i)\\d{1,12}[kmg]?")) {
+            return otherwise;
+        }
+        int shift = 10 * ("kmg".indexOf(Character.toLowerCase(
+                size.charAt(size.length() - 1))) + 1);
+        long number = Long.parseLong(shift == 0 ? size
+                : size.substring(0, size.length() - 1));
+        return number > Long.MAX_VALUE >> shift ? otherwise : number << shift;
+    }
+
+    /** Maximum number of bytes of contents held in memory. */
+    private static final long BUDGET = parseSize(
+            System.getenv("GITLET_MEMORY"),
+            Runtime.getRuntime().maxMemory() / 4);
+
+    /** Path, ending in a separator, of the cached gitlet folder, or null if
+     *  caching is off. */
+    private static String _root;
+
+    /** True while deferred writes are being written. */
+    private static boolean _flushing;
+
+    /** Deferred writes, by key. */
+    private static HashMap<String, byte[]> _dirty =
+        new HashMap<String, byte[]>();
+
+    /** Contents that match the disk, by key, least recently used first. */
+    private static LinkedHashMap<String, byte[]> _clean =
+        new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+    /** Total size of the values of _clean. */
+    private static long _cleanBytes;
+
+    /** Total size of the values of _dirty. */
+    private static long _dirtyBytes;
+}
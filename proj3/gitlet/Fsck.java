@@ -0,0 +1,255 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/** Verifier of the integrity of a repository. Every stored commit and blob
+ *  is streamed in parallel through the hash of the repository's object
+ *  format and compared with its file name, and then the history reachable
+ *  from every branch head, one generation at a time, is checked for
+ *  missing parents and blobs.
+ *  @author Colby Chang
+ */
+public class Fsck {
+
+    /** Creates a new Fsck.
+     *  @param repo repository to be verified
+     */
+    public Fsck(Repo repo) {
+        _repo = repo;
+    }
+
+    /** Verifies the repository, printing every problem found followed by
+     *  the number of objects checked and the rate at which they were.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        verifyHashes(_repo.getCommits(), "commit");
+        verifyHashes(_repo.getBlobs(), "blob");
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+        int reachable = checkConnectivity();
+        ArrayList<String> problems = new ArrayList<String>(_problems);
+        Collections.sort(problems);
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        double seconds = elapsed / 1e9;
+        double megabytes = _bytes.sum() / (double) (1 << 20);
+        System.out.println(String.format("Checked %d objects (%.1f MB) in "
+                + "%.2f s: %.0f objects/s, %.1f MB/s.", _objects.sum(),
+                megabytes, seconds, _objects.sum() / seconds,
+                megabytes / seconds));
+        System.out.println(String.format("Checked %d commits reachable "
+                + "from %d heads.", reachable, _numHeads));
+        if (problems.isEmpty()) {
+            System.out.println("No problems found.");
+        } else {
+            System.out.println(problems.size() + " problems found.");
+        }
+    }
+
+    /** Checks that every object in a directory hashes to its file name.
+     *  @param dir directory of objects
+     *  @param kind kind of the objects, for messages
+     */
+    private void verifyHashes(File dir, String kind) {
+        File[] files = Utils.listFiles(dir);
+        if (files == null) {
+            return;
+        }
+        Arrays.stream(files).parallel().forEach(file -> {
+            String hash = hash(file);
+            _objects.increment();
+            if (hash == null) {
+                _problems.add("Unreadable " + kind + " " + file.getName()
+                        + ".");
+            } else if (!hash.equals(file.getName())) {
+                _problems.add("Corrupt " + kind + " " + file.getName()
+                        + ": contents hash to " + hash + ".");
+                _corrupt.add(file.getName());
+            }
+        });
+    }
+
+    /** Returns the hash of the contents of a file, reading it in
+     *  chunks so that large blobs are never held in memory whole.
+     *  @param file file to be hashed
+     *  @return hash as a hex string, or null if file cannot be read
+     */
+    private String hash(File file) {
+        MessageDigest md = DIGEST.get();
+        byte[] buffer = BUFFER.get();
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+                _bytes.add(n);
+            }
+        } catch (IOException excp) {
+            md.reset();
+            return null;
+        }
+        byte[] digest = md.digest();
+        char[] hex = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /** Checks that the commits reachable from every branch head, and the
+     *  blobs they track, are present. Parents of shallow commits, and blobs
+     *  when the repository has promisor remotes, may be missing.
+     *  @return number of reachable commits
+     */
+    private int checkConnectivity() {
+        Set<String> shallow = _repo.getShallow();
+        boolean lazyBlobs = _repo.hasPromisors();
+        IdSet seen = new IdSet();
+        ArrayList<String> frontier = new ArrayList<String>();
+        for (String id : readHeads(_repo.getHeads(), "")) {
+            if (seen.add(id)) {
+                frontier.add(id);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            List<String> parents = frontier.parallelStream().
+                    flatMap(id -> checkCommit(id, shallow, lazyBlobs).
+                            stream()).collect(Collectors.toList());
+            frontier = new ArrayList<String>();
+            for (String id : parents) {
+                if (seen.add(id)) {
+                    frontier.add(id);
+                }
+            }
+        }
+        return seen.size();
+    }
+
+    /** Returns the head commit hashes of the branches under a directory,
+     *  including those of remotes in its subdirectories.
+     *  @param dir directory of branches
+     *  @param prefix prefix of the names of the branches in dir
+     *  @return head commit hashes
+     */
+    private ArrayList<String> readHeads(File dir, String prefix) {
+        ArrayList<String> heads = new ArrayList<String>();
+        File[] files = Utils.listFiles(dir);
+        if (files == null) {
+            return heads;
+        }
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                heads.addAll(readHeads(file, name + "/"));
+                continue;
+            }
+            _numHeads += 1;
+            String id;
+            try {
+                id = Utils.readObject(file, Branch.class).getHeadId();
+            } catch (IllegalArgumentException excp) {
+                _problems.add("Unreadable branch " + name + ".");
+                continue;
+            }
+            if (!_repo.hasCommit(id)) {
+                _problems.add("Missing commit " + id + ", head of branch "
+                        + name + ".");
+            } else {
+                heads.add(id);
+            }
+        }
+        return heads;
+    }
+
+    /** Checks that the parents and blobs of a commit are present.
+     *  @param id hash of the commit, which is present
+     *  @param shallow hashes of the shallow boundary commits
+     *  @param lazyBlobs true if blobs may be missing
+     *  @return hashes of the present parents of the commit
+     */
+    private ArrayList<String> checkCommit(String id, Set<String> shallow,
+                                          boolean lazyBlobs) {
+        ArrayList<String> parents = new ArrayList<String>();
+        if (_corrupt.contains(id)) {
+            return parents;
+        }
+        Commit commit;
+        try {
+            commit = _repo.readCommit(id);
+        } catch (IllegalArgumentException excp) {
+            _problems.add("Unreadable commit " + id + ".");
+            return parents;
+        }
+        if (!shallow.contains(id)) {
+            for (String parent : new String[] {commit.getParent(),
+                commit.getMergeParent()}) {
+                if (parent == null) {
+                    continue;
+                } else if (_repo.hasCommit(parent)) {
+                    parents.add(parent);
+                } else {
+                    _problems.add("Missing commit " + parent
+                            + ", parent of " + id + ".");
+                }
+            }
+        }
+        if (!lazyBlobs && commit.hasBlobs()) {
+            for (String fileName : commit.getFileNames()) {
+                String blob = commit.getBlobHash(fileName);
+                if (!Utils.join(_repo.getBlobs(), blob).exists()) {
+                    _problems.add("Missing blob " + blob + " of "
+                            + fileName + " in commit " + id + ".");
+                }
+            }
+        }
+        return parents;
+    }
+
+    /** Size, in bytes, of the buffer through which objects are hashed. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Hexadecimal digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Digest of each thread, in the object format in use. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(ObjectFormat::newDigest);
+
+    /** Read buffer of each thread. */
+    private static final ThreadLocal<byte[]> BUFFER =
+        ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    /** Repository being verified. */
+    private Repo _repo;
+
+    /** Problems found. */
+    private ConcurrentLinkedQueue<String> _problems =
+        new ConcurrentLinkedQueue<String>();
+
+    /** Hashes of objects whose contents do not match their hashes. */
+    private Set<String> _corrupt = Collections.synchronizedSet(
+            new HashSet<String>());
+
+    /** Number of objects hashed. */
+    private LongAdder _objects = new LongAdder();
+
+    /** Number of bytes hashed. */
+    private LongAdder _bytes = new LongAdder();
+
+    /** Number of branch heads. */
+    private int _numHeads;
+}
@@ -0,0 +1,237 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Set of object ids, kept as raw digest bytes in a single open-addressed
+ *  table rather than as Strings in a HashSet. An id costs its digest
+ *  length, 20 or 32 bytes, per slot, and the table is at most
+ *  three-quarters full, against well over a hundred bytes for a String in
+ *  a HashSet, so the walks over whole histories that merges, rebases and
+ *  fetches make fit in a fraction of the memory. Ids are digests, so their
+ *  first bytes already make a uniform hash. The all-zero digest marks an
+ *  empty slot, and is kept aside on the rare chance it is added.
+ *  @author Colby Chang
+ */
+class IdSet implements Iterable<String> {
+
+    /** Creates a new, empty IdSet for ids of the object format in use. */
+    IdSet() {
+        _width = ObjectFormat.idLength() / 2;
+        _table = new byte[INITIAL_SLOTS * _width];
+        _mask = INITIAL_SLOTS - 1;
+    }
+
+    /** Adds an id.
+     *  @param id the id, a full hexadecimal digest
+     *  @return true if it was not already present
+     */
+    boolean add(String id) {
+        byte[] digest = parse(id);
+        if (digest == null) {
+            throw new IllegalArgumentException("not an object id: " + id);
+        }
+        if (isZero(digest, 0)) {
+            boolean added = !_hasZero;
+            _hasZero = true;
+            _size += added ? 1 : 0;
+            return added;
+        }
+        int slot = find(_table, _mask, digest, 0);
+        if (!isZero(_table, slot * _width)) {
+            return false;
+        }
+        System.arraycopy(digest, 0, _table, slot * _width, _width);
+        _size += 1;
+        _used += 1;
+        if (_used > (_mask + 1) / 4 * 3) {
+            grow();
+        }
+        return true;
+    }
+
+    /** Adds every id of another set.
+     *  @param ids the other set
+     */
+    void addAll(IdSet ids) {
+        for (String id : ids) {
+            add(id);
+        }
+    }
+
+    /** Checks if an id is present.
+     *  @param id the id, which may be null or not a full digest
+     *  @return true if it is present
+     */
+    boolean contains(String id) {
+        byte[] digest = id == null ? null : parse(id);
+        if (digest == null) {
+            return false;
+        } else if (isZero(digest, 0)) {
+            return _hasZero;
+        }
+        return !isZero(_table, find(_table, _mask, digest, 0) * _width);
+    }
+
+    /** Returns the number of ids present. */
+    int size() {
+        return _size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                while (_slot <= _mask
+                       && isZero(_table, _slot * _width)) {
+                    _slot += 1;
+                }
+                return _slot <= _mask || _zeroLeft;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (_slot > _mask) {
+                    _zeroLeft = false;
+                    return format(new byte[_width], 0);
+                }
+                _slot += 1;
+                return format(_table, (_slot - 1) * _width);
+            }
+
+            /** Next slot to be looked at. */
+            private int _slot;
+
+            /** True if the all-zero id is yet to be returned. */
+            private boolean _zeroLeft = _hasZero;
+        };
+    }
+
+    /** Doubles the number of slots, moving every id to its new slot. */
+    private void grow() {
+        int slots = 2 * (_mask + 1);
+        byte[] table = new byte[slots * _width];
+        for (int i = 0; i <= _mask; i += 1) {
+            if (!isZero(_table, i * _width)) {
+                int slot = find(table, slots - 1, _table, i * _width);
+                System.arraycopy(_table, i * _width, table, slot * _width,
+                        _width);
+            }
+        }
+        _table = table;
+        _mask = slots - 1;
+    }
+
+    /** Returns the slot of a table that holds a digest, or the empty slot
+     *  at which probing for it stopped.
+     *  @param table the table
+     *  @param mask number of slots of table, less one
+     *  @param digest array holding the digest
+     *  @param offset index of the digest in that array
+     *  @return index of the slot
+     */
+    private int find(byte[] table, int mask, byte[] digest, int offset) {
+        int slot = ((digest[offset] & 0xff) << 24
+                    | (digest[offset + 1] & 0xff) << 16
+                    | (digest[offset + 2] & 0xff) << 8
+                    | (digest[offset + 3] & 0xff)) & mask;
+        while (!isZero(table, slot * _width)
+               && !equal(table, slot * _width, digest, offset)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Checks if two digests are equal.
+     *  @param a array holding the first
+     *  @param i index of the first in a
+     *  @param b array holding the second
+     *  @param j index of the second in b
+     *  @return true if their bytes are equal
+     */
+    private boolean equal(byte[] a, int i, byte[] b, int j) {
+        for (int k = 0; k < _width; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Checks if a digest is all zero, as an empty slot is.
+     *  @param a array holding the digest
+     *  @param i index of the digest in a
+     *  @return true if all its bytes are zero
+     */
+    private boolean isZero(byte[] a, int i) {
+        for (int k = 0; k < _width; k += 1) {
+            if (a[i + k] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the bytes of an id.
+     *  @param id the id
+     *  @return its digest, or null if id is not a full lowercase
+     *          hexadecimal digest
+     */
+    private byte[] parse(String id) {
+        if (id.length() != 2 * _width) {
+            return null;
+        }
+        byte[] digest = new byte[_width];
+        for (int i = 0; i < _width; i += 1) {
+            int high = HEX_DIGITS.indexOf(id.charAt(2 * i));
+            int low = HEX_DIGITS.indexOf(id.charAt(2 * i + 1));
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            digest[i] = (byte) (high << 4 | low);
+        }
+        return digest;
+    }
+
+    /** Returns the id of a digest.
+     *  @param a array holding the digest
+     *  @param i index of the digest in a
+     *  @return its lowercase hexadecimal numeral
+     */
+    private String format(byte[] a, int i) {
+        char[] id = new char[2 * _width];
+        for (int k = 0; k < _width; k += 1) {
+            id[2 * k] = HEX_DIGITS.charAt((a[i + k] >> 4) & 0xf);
+            id[2 * k + 1] = HEX_DIGITS.charAt(a[i + k] & 0xf);
+        }
+        return new String(id);
+    }
+
+    /** Number of slots of a new set, a power of two. */
+    private static final int INITIAL_SLOTS = 16;
+
+    /** Digits of ids, in order of value. */
+    private static final String HEX_DIGITS = "0123456789abcdef";
+
+    /** Length in bytes of each digest. */
+    private final int _width;
+
+    /** Slots of _width bytes each, all zero where empty. */
+    private byte[] _table;
+
+    /** Number of slots, less one. */
+    private int _mask;
+
+    /** Number of ids present. */
+    private int _size;
+
+    /** Number of slots in use. */
+    private int _used;
+
+    /** True if the all-zero id is present. */
+    private boolean _hasZero;
+}
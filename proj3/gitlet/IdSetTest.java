@@ -0,0 +1,139 @@
+package gitlet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/** The suite of JUnit tests for the IdSet class.
+ *  @author Colby Chang
+ */
+public class IdSetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Uses SHA-1 ids, as a repository without an object-format file
+     *  does. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("gitlet-idset").toFile();
+        ObjectFormat.use(_dir);
+    }
+
+    /** Goes back to SHA-1 ids and deletes the scratch directory. */
+    @After
+    public void tearDown() {
+        Utils.join(_dir, ObjectFormat.FILE_NAME).delete();
+        ObjectFormat.use(_dir);
+        _dir.delete();
+    }
+
+    @Test
+    public void testCollidingPrefixes() {
+        IdSet ids = new IdSet();
+        String prefix = "deadbeef" + repeat('0', 30);
+        for (int i = 1; i < 10; i += 1) {
+            assertTrue(ids.add(prefix + "0" + i));
+        }
+        assertEquals(9, ids.size());
+        for (int i = 1; i < 10; i += 1) {
+            assertTrue(ids.contains(prefix + "0" + i));
+            assertFalse(ids.add(prefix + "0" + i));
+        }
+        assertFalse(ids.contains(prefix + "0a"));
+        assertEquals(9, ids.size());
+    }
+
+    @Test
+    public void testGrowth() {
+        IdSet ids = new IdSet();
+        for (int i = 0; i < 1000; i += 1) {
+            assertTrue(ids.add(Utils.hash("id " + i)));
+        }
+        assertEquals(1000, ids.size());
+        for (int i = 0; i < 1000; i += 1) {
+            assertTrue(ids.contains(Utils.hash("id " + i)));
+            assertFalse(ids.add(Utils.hash("id " + i)));
+        }
+        assertFalse(ids.contains(Utils.hash("id 1000")));
+        assertEquals(1000, ids.size());
+    }
+
+    @Test
+    public void testZeroId() {
+        IdSet ids = new IdSet();
+        String zero = repeat('0', 40);
+        assertFalse(ids.contains(zero));
+        assertTrue(ids.add(zero));
+        assertTrue(ids.contains(zero));
+        assertFalse(ids.add(zero));
+        assertEquals(1, ids.size());
+        int count = 0;
+        for (String id : ids) {
+            assertEquals(zero, id);
+            count += 1;
+        }
+        assertEquals(1, count);
+    }
+
+    @Test
+    public void testSha256() {
+        ObjectFormat.save(_dir, "sha256");
+        IdSet ids = new IdSet();
+        String id = Utils.hash("id");
+        assertEquals(64, id.length());
+        assertTrue(ids.add(id));
+        assertTrue(ids.contains(id));
+        assertTrue(ids.add(repeat('0', 64)));
+        assertFalse(ids.contains(id.substring(0, 40)));
+        try {
+            ids.add(id.substring(0, 40));
+            fail("a SHA-1 id was added to a set of SHA-256 ids");
+        } catch (IllegalArgumentException excp) {
+            assertEquals(2, ids.size());
+        }
+    }
+
+    @Test
+    public void testIteration() {
+        IdSet ids = new IdSet();
+        HashSet<String> expected = new HashSet<String>();
+        expected.add(repeat('0', 40));
+        for (int i = 0; i < 100; i += 1) {
+            expected.add(Utils.hash("id " + i));
+        }
+        for (String id : expected) {
+            ids.add(id);
+        }
+        HashSet<String> seen = new HashSet<String>();
+        for (String id : ids) {
+            assertTrue(expected.contains(id));
+            assertTrue(seen.add(id));
+        }
+        assertEquals(expected, seen);
+        assertEquals(expected.size(), ids.size());
+    }
+
+    /** Returns a String of one character repeated.
+     *  @param c the character
+     *  @param n number of times
+     *  @return the String
+     */
+    private static String repeat(char c, int n) {
+        char[] result = new char[n];
+        Arrays.fill(result, c);
+        return new String(result);
+    }
+
+    /** Scratch .gitlet folder recording the object format in use. */
+    private File _dir;
+}
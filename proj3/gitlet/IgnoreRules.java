@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/** Patterns, read from the .gitletignore file at the root of the working
+ *  directory, of the paths that are never reported as untracked. Each line
+ *  is a glob in which '*' matches any characters but '/', "**" matches any
+ *  characters, '?' matches one character but '/' and "[...]" matches one
+ *  of a set of characters. A pattern ending in '/' matches directories
+ *  only. A pattern containing a '/' elsewhere is matched against the whole
+ *  path, and any other against the last name in it, at any depth. A
+ *  pattern starting with '!' keeps paths that other patterns ignore. Blank
+ *  lines and lines starting with '#' are skipped.
+ *
+ *  Patterns of each kind are compiled into a single regular expression,
+ *  so testing a path costs at most four matches however many patterns
+ *  there are. Ignored directories are never descended into, so nothing
+ *  under them is ever tested.
+ *  @author Colby Chang
+ */
+public class IgnoreRules {
+
+    /** Creates a new IgnoreRules.
+     *  @param lines lines of an ignore file
+     */
+    public IgnoreRules(ArrayList<String> lines) {
+        StringBuilder[] regexes = new StringBuilder[KINDS];
+        for (int i = 0; i < KINDS; i += 1) {
+            regexes[i] = new StringBuilder();
+        }
+        for (String line : lines) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            int kind = 0;
+            if (pattern.startsWith("!")) {
+                kind += KEEP;
+                pattern = pattern.substring(1);
+            }
+            if (pattern.endsWith("/")) {
+                kind += DIRECTORIES;
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            StringBuilder regex = regexes[kind];
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append(toRegex(pattern));
+        }
+        _patterns = new Pattern[KINDS];
+        for (int i = 0; i < KINDS; i += 1) {
+            if (regexes[i].length() > 0) {
+                _patterns[i] = Pattern.compile(regexes[i].toString());
+            }
+        }
+    }
+
+    /** Checks if a path is ignored.
+     *  @param path path relative to the working directory, separated by '/'
+     *  @param directory true if path is a directory
+     *  @return true if some pattern ignores path and no '!' pattern keeps it
+     */
+    public boolean isIgnored(String path, boolean directory) {
+        return (matches(IGNORE, path) || directory
+                && matches(IGNORE + DIRECTORIES, path))
+            && !(matches(KEEP, path) || directory
+                && matches(KEEP + DIRECTORIES, path));
+    }
+
+    /** Returns the ignore rules of a working directory.
+     *  @param root the working directory
+     *  @return the rules in its ignore file, which may be none
+     */
+    public static IgnoreRules fromFile(File root) {
+        ArrayList<String> lines = new ArrayList<String>();
+        File file = Utils.join(root, FILE_NAME);
+        if (file.isFile()) {
+            for (String line : Utils.readContentsAsString(file).
+                    split("\n")) {
+                lines.add(line);
+            }
+        }
+        return new IgnoreRules(lines);
+    }
+
+    /** Checks if the patterns of a kind match a path.
+     *  @param kind kind of the patterns
+     *  @param path path to be matched
+     *  @return true if some pattern of that kind matches path
+     */
+    private boolean matches(int kind, String path) {
+        return _patterns[kind] != null
+            && _patterns[kind].matcher(path).matches();
+    }
+
+    /** Returns the regular expression equivalent to a glob pattern.
+     *  @param pattern glob pattern, without its '!' or trailing '/'
+     *  @return regular expression matching the same paths
+     */
+    static String toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder("(?:");
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        } else if (!pattern.contains("/")) {
+            regex.append("(?:.*/)?");
+        }
+        for (int i = 0; i < pattern.length(); i += 1) {
+            char c = pattern.charAt(i);
+            if (pattern.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 2;
+            } else if (pattern.startsWith("**", i)) {
+                regex.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[' && pattern.indexOf(']', i + 2) > 0) {
+                int end = pattern.indexOf(']', i + 2);
+                String set = pattern.substring(i + 1, end);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                regex.append('[').append(set.replace("\\", "\\\\").
+                        replace("[", "\\[")).append(']');
+                i = end;
+            } else if (c == '\\' && i + 1 < pattern.length()) {
+                i += 1;
+                regex.append(Pattern.quote(String.valueOf(
+                        pattern.charAt(i))));
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.append(')').toString();
+    }
+
+    /** Name of the ignore file, at the root of the working directory. */
+    static final String FILE_NAME = ".gitletignore";
+
+    /** Kind of the patterns that ignore paths. */
+    private static final int IGNORE = 0;
+
+    /** Added to a kind for patterns that keep paths. */
+    private static final int KEEP = 2;
+
+    /** Added to a kind for patterns that match only directories. */
+    private static final int DIRECTORIES = 1;
+
+    /** Number of kinds of patterns. */
+    private static final int KINDS = 4;
+
+    /** Compiled patterns of each kind, or null where there are none. */
+    private Pattern[] _patterns;
+}
@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Three-way merge of file contents at the granularity of lines, in the
+ *  style of diff3. Changes that the two sides made to disjoint regions of
+ *  the base are both kept; changes to overlapping or adjacent regions are
+ *  kept as-is when identical and marked as a conflict otherwise.
+ *  @author Colby Chang
+ */
+public class LineMerge {
+
+    /** Merges the changes made from base to current and from base to given.
+     *  A side that deleted the file, while the other changed it, conflicts
+     *  with the whole of the other side.
+     *  @param base contents at the split point, or null if it lacks the file
+     *  @param current contents in the current commit, or null if deleted
+     *  @param given contents in the given commit, or null if deleted
+     */
+    public LineMerge(String base, String current, String given) {
+        if (current == null || given == null) {
+            _conflict = true;
+            StringBuilder out = new StringBuilder("<<<<<<< HEAD\n");
+            appendTerminated(out, splitLines(current == null ? "" : current));
+            out.append("=======\n");
+            appendTerminated(out, splitLines(given == null ? "" : given));
+            out.append(">>>>>>>\n");
+            _result = out.toString();
+            return;
+        }
+        String[] b = splitLines(base == null ? "" : base);
+        String[] c = splitLines(current);
+        String[] g = splitLines(given);
+        Diff.LineTable table = new Diff.LineTable();
+        int[] bIds = table.intern(b);
+        int[] cIds = table.intern(c);
+        int[] gIds = table.intern(g);
+        ArrayList<Diff.Edit> cEdits = Diff.diff(bIds, cIds);
+        ArrayList<Diff.Edit> gEdits = Diff.diff(bIds, gIds);
+        StringBuilder out = new StringBuilder();
+        int ci = 0, gi = 0, basePos = 0, cShift = 0, gShift = 0;
+        while (ci < cEdits.size() || gi < gEdits.size()) {
+            int lo = Integer.MAX_VALUE;
+            if (ci < cEdits.size()) {
+                lo = cEdits.get(ci).aStart();
+            }
+            if (gi < gEdits.size()) {
+                lo = Math.min(lo, gEdits.get(gi).aStart());
+            }
+            int hi = lo, cj = ci, gj = gi, cDelta = 0, gDelta = 0;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                if (cj < cEdits.size() && cEdits.get(cj).aStart() <= hi) {
+                    Diff.Edit edit = cEdits.get(cj);
+                    hi = Math.max(hi, edit.aEnd());
+                    cDelta += edit.bEnd() - edit.bStart()
+                            - (edit.aEnd() - edit.aStart());
+                    cj += 1;
+                    grew = true;
+                }
+                if (gj < gEdits.size() && gEdits.get(gj).aStart() <= hi) {
+                    Diff.Edit edit = gEdits.get(gj);
+                    hi = Math.max(hi, edit.aEnd());
+                    gDelta += edit.bEnd() - edit.bStart()
+                            - (edit.aEnd() - edit.aStart());
+                    gj += 1;
+                    grew = true;
+                }
+            }
+            append(out, b, basePos, lo);
+            String[] cPart = Arrays.copyOfRange(c, lo + cShift,
+                    hi + cShift + cDelta);
+            String[] gPart = Arrays.copyOfRange(g, lo + gShift,
+                    hi + gShift + gDelta);
+            if (gj == gi) {
+                append(out, cPart, 0, cPart.length);
+            } else if (cj == ci || Arrays.equals(cPart, gPart)) {
+                append(out, gPart, 0, gPart.length);
+            } else {
+                _conflict = true;
+                out.append("<<<<<<< HEAD\n");
+                appendTerminated(out, cPart);
+                out.append("=======\n");
+                appendTerminated(out, gPart);
+                out.append(">>>>>>>\n");
+            }
+            cShift += cDelta;
+            gShift += gDelta;
+            basePos = hi;
+            ci = cj;
+            gi = gj;
+        }
+        append(out, b, basePos, b.length);
+        _result = out.toString();
+    }
+
+    /** Returns the merged contents, including any conflict markers.
+     *  @return merged contents
+     */
+    public String getResult() {
+        return _result;
+    }
+
+    /** Checks if the two sides made conflicting changes.
+     *  @return true if the result contains conflict markers
+     */
+    public boolean hasConflict() {
+        return _conflict;
+    }
+
+    /** Splits text into lines, each keeping its newline, so that joining
+     *  the lines gives back text exactly.
+     *  @param text text to be split
+     *  @return lines of text
+     */
+    static String[] splitLines(String text) {
+        ArrayList<String> lines = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            } else {
+                end += 1;
+            }
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /** Appends lines[lo, hi) to out.
+     *  @param out destination
+     *  @param lines lines to be appended
+     *  @param lo first line to append
+     *  @param hi end of the lines to append
+     */
+    private static void append(StringBuilder out, String[] lines, int lo,
+                               int hi) {
+        for (int i = lo; i < hi; i += 1) {
+            out.append(lines[i]);
+        }
+    }
+
+    /** Appends lines to out, adding a newline after the last one if it
+     *  lacks one, so that a conflict marker can follow.
+     *  @param out destination
+     *  @param lines lines to be appended
+     */
+    private static void appendTerminated(StringBuilder out, String[] lines) {
+        append(out, lines, 0, lines.length);
+        if (lines.length > 0 && !lines[lines.length - 1].endsWith("\n")) {
+            out.append("\n");
+        }
+    }
+
+    /** Merged contents. */
+    private String _result;
+
+    /** True if the merge has a conflict. */
+    private boolean _conflict;
+}
@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** Mapping of each line of one version of a file to the commit that
+ *  introduced it. Origins are saved per (commit, file name) for the commits
+ *  that changed the file, so that later blames only extend them.
+ *  @author Colby Chang
+ */
+public class LineOrigins implements Serializable {
+
+    /** Creates the origins of a version whose lines were all introduced by
+     *  one commit.
+     *  @param blobHash hash of the blob of this version
+     *  @param numLines number of lines in this version
+     *  @param commit hash of the commit that introduced them
+     */
+    public LineOrigins(String blobHash, int numLines, String commit) {
+        _blobHash = blobHash;
+        _commits = new ArrayList<String>();
+        _commits.add(commit);
+        _origins = new int[numLines];
+    }
+
+    /** Creates the origins of a version derived from a previous one. Lines
+     *  that the diff from the previous version kept keep their origins, and
+     *  all others are attributed to commit.
+     *  @param blobHash hash of the blob of this version
+     *  @param previous origins of the previous version
+     *  @param previousLines lines of the previous version
+     *  @param lines lines of this version
+     *  @param commit hash of the commit that made this version
+     */
+    public LineOrigins(String blobHash, LineOrigins previous,
+                       String[] previousLines, String[] lines,
+                       String commit) {
+        _blobHash = blobHash;
+        _commits = new ArrayList<String>();
+        _origins = new int[lines.length];
+        HashMap<Integer, Integer> remap = new HashMap<Integer, Integer>();
+        int self = addCommit(commit);
+        Diff.LineTable table = new Diff.LineTable();
+        ArrayList<Diff.Edit> edits = Diff.diff(table.intern(previousLines),
+                table.intern(lines));
+        int i = 0, j = 0;
+        for (Diff.Edit edit : edits) {
+            for (; j < edit.bStart(); i += 1, j += 1) {
+                _origins[j] = inherit(previous, i, remap);
+            }
+            for (; j < edit.bEnd(); j += 1) {
+                _origins[j] = self;
+            }
+            i = edit.aEnd();
+        }
+        for (; j < lines.length; i += 1, j += 1) {
+            _origins[j] = inherit(previous, i, remap);
+        }
+    }
+
+    /** Returns the hash of the commit that introduced a line.
+     *  @param line index of the line, counting from 0
+     *  @return commit hash
+     */
+    public String getOrigin(int line) {
+        return _commits.get(_origins[line]);
+    }
+
+    /** Returns the number of lines.
+     *  @return number of lines
+     */
+    public int size() {
+        return _origins.length;
+    }
+
+    /** Returns the hash of the blob whose lines these are.
+     *  @return blob hash
+     */
+    public String getBlobHash() {
+        return _blobHash;
+    }
+
+    /** Saves origins to be accessed later.
+     *  @param dir directory in which to save origins
+     *  @param commit hash of the commit that made this version
+     *  @param fileName name of the file
+     */
+    public void saveOrigins(File dir, String commit, String fileName) {
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
+        Utils.writeObject(Utils.join(dir, key(commit, fileName)), this);
+    }
+
+    /** Returns the saved origins of a file at a commit.
+     *  @param dir directory in which origins are saved
+     *  @param commit hash of the commit that made the version
+     *  @param fileName name of the file
+     *  @return saved origins, or null if there are none
+     */
+    public static LineOrigins fromFile(File dir, String commit,
+                                       String fileName) {
+        File file = Utils.join(dir, key(commit, fileName));
+        if (!file.exists()) {
+            return null;
+        }
+        return Utils.readObject(file, LineOrigins.class);
+    }
+
+    /** Returns the name under which origins are saved.
+     *  @param commit commit hash
+     *  @param fileName file name
+     *  @return file name of the saved origins
+     */
+    private static String key(String commit, String fileName) {
+        return Utils.sha1(commit, "/", fileName);
+    }
+
+    /** Returns the index in _commits of the origin of a line of previous,
+     *  adding it if needed.
+     *  @param previous origins of the previous version
+     *  @param line index of the line in previous
+     *  @param remap mapping of indices in previous to indices in this
+     *  @return index of the origin in _commits
+     */
+    private int inherit(LineOrigins previous, int line,
+                        HashMap<Integer, Integer> remap) {
+        int index = previous._origins[line];
+        Integer mapped = remap.get(index);
+        if (mapped == null) {
+            mapped = addCommit(previous._commits.get(index));
+            remap.put(index, mapped);
+        }
+        return mapped;
+    }
+
+    /** Adds a commit hash to _commits.
+     *  @param commit commit hash
+     *  @return its index
+     */
+    private int addCommit(String commit) {
+        _commits.add(commit);
+        return _commits.size() - 1;
+    }
+
+    /** Hash of the blob whose lines these are. */
+    private String _blobHash;
+
+    /** Distinct commit hashes referred to by _origins. */
+    private ArrayList<String> _commits;
+
+    /** Index in _commits of the origin of each line. */
+    private int[] _origins;
+
+    /** Version of the serialized form, kept fixed so that saved
+     *  origins stay readable. */
+    private static final long serialVersionUID = -8252155122978950163L;
+}
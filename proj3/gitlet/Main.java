@@ -1,6 +1,19 @@
 package gitlet;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
@@ -11,17 +24,44 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) {
-        if (args.length == 0) {
-            System.out.println("Please enter a command.");
+        try {
+            if (args.length == 0) {
+                throw Utils.error("Please enter a command.");
+            }
+            handleCases(args);
+        } catch (GitletException excp) {
+            if (excp.getMessage() != null) {
+                System.out.println(excp.getMessage());
+            }
             System.exit(0);
         }
-        handleCases(args);
     }
 
-    /** Handles cases for arguments.
+    /** Handles cases for arguments, as a phase of the trace, and then
+     *  counts the objects the command stored, starting maintenance after
+     *  the commands in AUTO_MAINTAINED if it is due. The count is kept
+     *  even when the command ends by throwing, as a fast-forward pull does
+     *  to report its outcome.
      *  @param args inputs from terminal
      */
     public static void handleCases(String[] args) {
+        int depth = Trace.beginPhase(args[0]);
+        try {
+            if (GITLET_FOLDER.isDirectory()) {
+                ObjectFormat.use(GITLET_FOLDER);
+            }
+            runCommand(args);
+        } finally {
+            Maintenance.afterCommand(GITLET_FOLDER, !_inBatch
+                    && AUTO_MAINTAINED.contains(args[0]));
+            Trace.endPhase(depth);
+        }
+    }
+
+    /** Runs the command named by the first argument.
+     *  @param args inputs from terminal
+     */
+    private static void runCommand(String[] args) {
         switch (args[0]) {
         case "init":
             initGitlet(args);
@@ -62,6 +102,9 @@ public class Main {
         case "merge":
             mergeBranch(args);
             break;
+        case "rebase":
+            rebase(args);
+            break;
         case "add-remote":
             createRemote(args);
             break;
@@ -77,23 +120,61 @@ public class Main {
         case "pull":
             pull(args);
             break;
+        case "diff":
+            diff(args);
+            break;
+        case "blame":
+            blame(args);
+            break;
+        case "sparse-checkout":
+            sparseCheckout(args);
+            break;
+        case "fsck":
+            fsck(args);
+            break;
+        case "maintenance":
+            maintenance(args);
+            break;
+        case "serve":
+            serve(args);
+            break;
+        case "fast-export":
+            fastExport(args);
+            break;
+        case "fast-import":
+            fastImport(args);
+            break;
+        case "batch":
+            batch(args);
+            break;
+        case "checkpoint":
+            validateNumArgs(args, 1);
+            FileCache.flush();
+            break;
         default:
             noCommandExit();
         }
     }
 
     /** Initializes gitlet, if not already initialized.
+     *  "--object-format=NAME" names objects by sha1, the default, or sha256.
      *  @param args command that starts init
      */
     public static void initGitlet(String[] args) {
-        validateNumArgs(args, 1);
+        String format = ObjectFormat.DEFAULT;
+        if (args.length == 2 && args[1].startsWith("--object-format=")) {
+            format = args[1].substring("--object-format=".length());
+        } else {
+            validateNumArgs(args, 1);
+        }
+        ObjectFormat.check(format);
         if (!GITLET_FOLDER.exists()) {
             GITLET_FOLDER.mkdir();
+            ObjectFormat.save(GITLET_FOLDER, format);
             new Repo(GITLET_FOLDER).init();
         } else {
-            System.out.println("A Gitlet version-control system already "
+            throw Utils.error("A Gitlet version-control system already "
                     + "exists in the current directory.");
-            System.exit(0);
         }
     }
 
@@ -104,11 +185,10 @@ public class Main {
         checkInitialized();
         validateNumArgs(args, 2);
         File file = new File(args[1]);
-        if (file.exists()) {
+        if (file.isFile()) {
             Repo.fromFile(GITLET_FOLDER).add(file);
         } else {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            throw Utils.error("File does not exist.");
         }
     }
 
@@ -118,13 +198,11 @@ public class Main {
     public static void createCommit(String[] args) {
         checkInitialized();
         if (args.length == 1 || args[1].equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw Utils.error("Please enter a commit message.");
         }
         validateNumArgs(args, 2);
         if (StagingArea.fromFile(GITLET_FOLDER).isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw Utils.error("No changes added to the commit.");
         }
         Repo.fromFile(GITLET_FOLDER).createCommit(args[1]);
     }
@@ -138,13 +216,53 @@ public class Main {
         Repo.fromFile(GITLET_FOLDER).remove(new File(args[1]));
     }
 
-    /** Prints out the commits, in order, of the current branch.
-     *  @param args command that starts log
+    /** Prints out the commits, in order, of the current branch. Accepts
+     *  "-n N" to print at most N commits, "--since YYYY-MM-DD" to stop at
+     *  older commits, "--oneline" to print one line per commit, and
+     *  "-- FILE" to print only the commits that changed FILE.
+     *  @param args command that starts log, followed by its options
      */
     public static void printLog(String[] args) {
         checkInitialized();
-        validateNumArgs(args, 1);
-        Repo.fromFile(GITLET_FOLDER).printLog();
+        int limit = -1;
+        long since = Long.MIN_VALUE;
+        boolean oneline = false;
+        String fileName = null;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--oneline")) {
+                oneline = true;
+            } else if (i + 1 == args.length) {
+                throw Utils.error("Incorrect operands.");
+            } else if (args[i].equals("-n")
+                    && args[i + 1].matches("\\d+")) {
+                limit = Integer.parseInt(args[i + 1]);
+                i += 1;
+            } else if (args[i].equals("--since")) {
+                since = parseDate(args[i + 1]);
+                i += 1;
+            } else if (args[i].equals("--") && i + 2 == args.length) {
+                fileName = args[i + 1];
+                i += 1;
+            } else {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        Repo.fromFile(GITLET_FOLDER).printLog(limit, since, oneline,
+                fileName);
+    }
+
+    /** Parses a date given as YYYY-MM-DD, in the local time zone.
+     *  @param date date to be parsed
+     *  @return milliseconds since the epoch at the start of that date
+     */
+    public static long parseDate(String date) {
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setLenient(false);
+            return format.parse(date).getTime();
+        } catch (ParseException excp) {
+            throw Utils.error("Incorrect operands.");
+        }
     }
 
     /** Prints out all commits, in no particular order.
@@ -183,23 +301,20 @@ public class Main {
         switch (args.length) {
         case 3:
             if (!args[1].equals("--")) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw Utils.error("Incorrect operands.");
             }
             repo.checkoutFile(args[2]);
             break;
         case 4:
             if (!args[2].equals("--")) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw Utils.error("Incorrect operands.");
             }
             String commit = checkAbbreviatedID(args[1]);
             File commitFile = Utils.join(repo.getCommits(), commit);
             if (commitFile.exists()) {
                 repo.checkoutFileFromCommit(commitFile, args[3]);
             } else {
-                System.out.println("No commit with that id exists.");
-                System.exit(0);
+                throw Utils.error("No commit with that id exists.");
             }
             break;
         case 2:
@@ -207,13 +322,11 @@ public class Main {
             if (branchFile.exists()) {
                 repo.checkoutBranch(branchFile);
             } else {
-                System.out.println("No such branch exists.");
-                System.exit(0);
+                throw Utils.error("No such branch exists.");
             }
             break;
         default:
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
     }
 
@@ -225,8 +338,7 @@ public class Main {
         validateNumArgs(args, 2);
         Repo repo = Repo.fromFile(GITLET_FOLDER);
         if (Utils.join(repo.getHeads(), args[1]).exists()) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+            throw Utils.error("A branch with that name already exists.");
         } else {
             repo.createBranch(args[1]);
         }
@@ -241,8 +353,7 @@ public class Main {
         Repo repo = Repo.fromFile(GITLET_FOLDER);
         File branchFile = Utils.join(repo.getHeads(), args[1]);
         if (!branchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name does not exist.");
         } else {
             repo.removeBranch(args[1]);
         }
@@ -260,41 +371,63 @@ public class Main {
         if (commitFile.exists()) {
             repo.resetToCommit(commitFile);
         } else {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+            throw Utils.error("No commit with that id exists.");
         }
     }
 
-    /** Merges files from given branch into current branch.
+    /** Merges files from given branch into current branch. An optional
+     *  "--find-renames=N" sets the similarity, as a percentage, above which
+     *  a deleted and an added file are merged as a rename.
      *  @param args command that includes the branch to merge from
      */
     public static void mergeBranch(String[] args) {
         checkInitialized();
+        int threshold = RenameDetector.DEFAULT_THRESHOLD;
+        if (args.length == 3 && args[2].matches("--find-renames=\\d+")) {
+            threshold = Integer.parseInt(args[2].substring(
+                    "--find-renames=".length()));
+            args = new String[] {args[0], args[1]};
+        }
         validateNumArgs(args, 2);
         Repo repo = Repo.fromFile(GITLET_FOLDER);
         File branchFile = Utils.join(repo.getHeads(), args[1]);
         if (!branchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name does not exist.");
         } else {
-            repo.mergeBranch(branchFile);
+            repo.mergeBranch(branchFile, threshold);
         }
     }
 
-    /** Creates a new remote.
+    /** Replays the commits of the current branch onto the given branch.
+     *  @param args command that includes the branch to rebase onto
+     */
+    public static void rebase(String[] args) {
+        checkInitialized();
+        validateNumArgs(args, 2);
+        Repo repo = Repo.fromFile(GITLET_FOLDER);
+        File branchFile = Utils.join(repo.getHeads(), args[1]);
+        if (!branchFile.isFile()) {
+            throw Utils.error("A branch with that name does not exist.");
+        }
+        repo.rebase(branchFile);
+    }
+
+    /** Creates a new remote, at a .gitlet directory or at a URL of the form
+     *  gitlet://HOST:PORT, where gitlet serve is running.
      *  @param args command that includes remote name and directory
      */
     public static void createRemote(String[] args) {
         checkInitialized();
         validateNumArgs(args, 3);
-        if (!Pattern.matches("(.+/)+[.]gitlet", args[2])) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+        boolean url = Transport.isUrl(args[2]);
+        if (!url && !Pattern.matches("(.+/)+[.]gitlet", args[2])) {
+            throw Utils.error("Incorrect operands.");
         }
         Repo repo = Repo.fromFile(GITLET_FOLDER);
         if (repo.getRemoteNames().contains(args[1])) {
-            System.out.println("A remote with that name already exists.");
-            System.exit(0);
+            throw Utils.error("A remote with that name already exists.");
+        } else if (url) {
+            repo.createRemote(args[1], args[2]);
         } else {
             String[] path = args[2].split("[/]");
             File remoteFolder = new File(".");
@@ -315,8 +448,7 @@ public class Main {
         if (repo.getRemoteNames().contains(args[1])) {
             repo.removeRemote(args[1]);
         } else {
-            System.out.println("A remote with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A remote with that name does not exist.");
         }
     }
 
@@ -334,18 +466,66 @@ public class Main {
         }
     }
 
-    /** Fetches updated changes from a given remote branch.
+    /** Fetches updated changes from a given remote branch. "--depth N"
+     *  copies only the last N generations of history, "--deepen N"
+     *  extends every shallow boundary by N more generations, and
+     *  "--filter=blob:none" copies commits only, fetching their blobs from
+     *  the remote when they are first needed. "--all" in place of the
+     *  branch name fetches every branch of the remote at once.
      *  @param args command that includes the name of remote and name of branch
      */
     public static void fetch(String[] args) {
         checkInitialized();
+        if (args.length >= 3 && args[2].equals("--all")) {
+            fetchAll(args);
+            return;
+        }
+        int depth = -1, deepen = 0;
+        boolean lazyBlobs = false;
+        for (int i = 3; i < args.length; i += 1) {
+            if (args[i].equals("--filter=blob:none")) {
+                lazyBlobs = true;
+            } else if ((args[i].equals("--depth")
+                    || args[i].equals("--deepen")) && i + 1 < args.length
+                    && args[i + 1].matches("[1-9]\\d*")) {
+                int n = Integer.parseInt(args[i + 1]);
+                if (args[i].equals("--depth")) {
+                    depth = n;
+                } else {
+                    deepen = n;
+                }
+                i += 1;
+            } else {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        if (args.length > 3) {
+            args = new String[] {args[0], args[1], args[2]};
+        }
         validateNumArgs(args, 3);
         Repo repo = Repo.fromFile(GITLET_FOLDER);
         if (repo.getRemoteNames().contains(args[1])) {
-            repo.fetchFromRemoteBranch(args[1], args[2]);
+            repo.fetchFromRemoteBranch(args[1], args[2], depth, deepen,
+                    lazyBlobs);
         } else {
-            System.out.println("Remote directory not found.");
-            System.exit(0);
+            throw Utils.error("Remote directory not found.");
+        }
+    }
+
+    /** Fetches every branch of a remote, optionally without blobs.
+     *  @param args command that includes the name of remote and "--all"
+     */
+    private static void fetchAll(String[] args) {
+        boolean lazyBlobs = args.length == 4
+            && args[3].equals("--filter=blob:none");
+        if (!lazyBlobs) {
+            validateNumArgs(args, 3);
+        }
+        Repo repo = Repo.fromFile(GITLET_FOLDER);
+        if (repo.getRemoteNames().contains(args[1])) {
+            repo.fetchAllFromRemote(args[1], lazyBlobs);
+        } else {
+            throw Utils.error("Remote directory not found.");
         }
     }
 
@@ -363,6 +543,272 @@ public class Main {
         }
     }
 
+    /** Prints line differences. With no operands, diffs the head commit
+     *  against the working directory; with one commit, diffs that commit
+     *  against the working directory; with two, diffs the two commits.
+     *  @param args command that includes up to two commit ids
+     */
+    public static void diff(String[] args) {
+        checkInitialized();
+        if (args.length > 3) {
+            throw Utils.error("Incorrect operands.");
+        }
+        Repo repo = Repo.fromFile(GITLET_FOLDER);
+        Commit from = repo.getCurrentBranch().getHead();
+        Commit to = null;
+        if (args.length > 1) {
+            from = readCommitArg(repo, args[1]);
+        }
+        if (args.length > 2) {
+            to = readCommitArg(repo, args[2]);
+        }
+        repo.diff(from, to);
+    }
+
+    /** Prints the lines of a file in the head commit with the commit that
+     *  introduced each one.
+     *  @param args command that includes the file name
+     */
+    public static void blame(String[] args) {
+        checkInitialized();
+        validateNumArgs(args, 2);
+        Repo.fromFile(GITLET_FOLDER).blame(args[1]);
+    }
+
+    /** Verifies the hashes of all stored objects and the connectivity of
+     *  the history reachable from all branches.
+     *  @param args command that starts fsck
+     */
+    public static void fsck(String[] args) {
+        checkInitialized();
+        validateNumArgs(args, 1);
+        new Fsck(Repo.fromFile(GITLET_FOLDER)).run();
+    }
+
+    /** Prunes unreachable objects, builds missing commit indexes and drops
+     *  stale stat cache entries. "--prune-now" prunes unreachable objects
+     *  however recent.
+     *  @param args command that starts maintenance
+     */
+    public static void maintenance(String[] args) {
+        checkInitialized();
+        boolean pruneNow = false;
+        if (args.length == 2 && args[1].equals("--prune-now")) {
+            pruneNow = true;
+        } else {
+            validateNumArgs(args, 1);
+        }
+        Maintenance.run(Repo.fromFile(GITLET_FOLDER), pruneNow);
+    }
+
+    /** Serves the repository to remotes on other processes over TCP, on
+     *  the given port or Server.DEFAULT_PORT, until killed.
+     *  @param args command that starts serve
+     */
+    public static void serve(String[] args) {
+        checkInitialized();
+        int port = Server.DEFAULT_PORT;
+        if (args.length == 2 && args[1].matches("\\d{1,5}")) {
+            port = Integer.parseInt(args[1]);
+        } else {
+            validateNumArgs(args, 1);
+        }
+        if (_inBatch) {
+            throw Utils.error("Cannot serve from a batch.");
+        }
+        Server server = new Server(GITLET_FOLDER, port);
+        System.out.printf("Serving on port %d.%n", server.getPort());
+        System.out.flush();
+        server.serve();
+    }
+
+    /** Writes the history of the given branches, or of all branches if
+     *  none are given, to standard output as a fast-import stream.
+     *  @param args command that includes the names of branches
+     */
+    public static void fastExport(String[] args) {
+        checkInitialized();
+        Repo repo = Repo.fromFile(GITLET_FOLDER);
+        ArrayList<String> names = new ArrayList<String>(
+                Arrays.asList(args).subList(1, args.length));
+        if (names.isEmpty()) {
+            for (File branchFile : Utils.listFiles(repo.getHeads())) {
+                if (branchFile.isFile()) {
+                    names.add(branchFile.getName());
+                }
+            }
+            Collections.sort(names);
+        }
+        LinkedHashMap<String, String> heads =
+                new LinkedHashMap<String, String>();
+        for (String name : names) {
+            File branchFile = Utils.join(repo.getHeads(), name);
+            if (!branchFile.isFile()) {
+                throw Utils.error("A branch with that name does not "
+                        + "exist.");
+            }
+            heads.put(name, Utils.readObject(branchFile, Branch.class).
+                    getHeadId());
+        }
+        new FastExport(repo).export(heads);
+    }
+
+    /** Imports history from a fast-import stream read from the given file,
+     *  or from standard input if none is given or it is "-".
+     *  @param args command that includes the optional file name
+     */
+    public static void fastImport(String[] args) {
+        checkInitialized();
+        if (args.length > 2) {
+            throw Utils.error("Incorrect operands.");
+        }
+        FastImport importer = new FastImport(Repo.fromFile(GITLET_FOLDER));
+        if (args.length == 1 || args[1].equals("-")) {
+            importer.run(System.in);
+            return;
+        }
+        try (InputStream in = new FileInputStream(args[1])) {
+            importer.run(in);
+        } catch (IOException excp) {
+            throw Utils.error("File does not exist.");
+        }
+    }
+
+    /** Runs the commands, one per line, in the given file, or in standard
+     *  input if it is "-". Arguments are separated by spaces, may be
+     *  double-quoted, and blank lines and lines starting with '#' are
+     *  skipped. A failing command prints its message and the script goes
+     *  on. The contents of the gitlet folder stay in memory between
+     *  commands, and overwritten files reach the disk only at "checkpoint"
+     *  and when the script ends.
+     *  @param args command that includes the file name
+     */
+    public static void batch(String[] args) {
+        validateNumArgs(args, 2);
+        if (_inBatch) {
+            throw Utils.error("Batches cannot be nested.");
+        }
+        InputStream in = System.in;
+        if (!args[1].equals("-")) {
+            try {
+                in = new FileInputStream(args[1]);
+            } catch (IOException excp) {
+                throw Utils.error("File does not exist.");
+            }
+        }
+        _inBatch = true;
+        FileCache.enable(GITLET_FOLDER);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    ArrayList<String> words = splitCommand(line);
+                    if (!words.isEmpty() && !words.get(0).startsWith("#")) {
+                        handleCases(words.toArray(new String[0]));
+                    }
+                } catch (GitletException excp) {
+                    if (excp.getMessage() != null) {
+                        System.out.println(excp.getMessage());
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not read batch.");
+        } finally {
+            FileCache.flush();
+            _inBatch = false;
+        }
+    }
+
+    /** Splits a line of a batch into its arguments. Arguments are
+     *  separated by whitespace, and a double-quoted argument may contain
+     *  whitespace and characters escaped by a backslash.
+     *  @param line line to be split
+     *  @return its arguments
+     */
+    static ArrayList<String> splitCommand(String line) {
+        ArrayList<String> words = new ArrayList<String>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted && c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                word.append(line.charAt(i));
+            } else if (c == '"') {
+                quoted = !quoted;
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                word.append(c);
+            }
+        }
+        if (quoted) {
+            throw Utils.error("Unterminated quote.");
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /** Manages the sparse checkout. "set PATTERN..." restricts the working
+     *  directory to the files matching the patterns, "list" prints the
+     *  patterns, and "disable" writes every tracked file again.
+     *  @param args command that includes the subcommand and its patterns
+     */
+    public static void sparseCheckout(String[] args) {
+        checkInitialized();
+        if (args.length < 2) {
+            throw Utils.error("Incorrect operands.");
+        }
+        Repo repo = Repo.fromFile(GITLET_FOLDER);
+        switch (args[1]) {
+        case "set":
+            if (args.length < 3) {
+                throw Utils.error("Incorrect operands.");
+            }
+            repo.setSparseCheckout(new ArrayList<String>(
+                    Arrays.asList(args).subList(2, args.length)));
+            break;
+        case "list":
+            validateNumArgs(args, 2);
+            repo.listSparseCheckout();
+            break;
+        case "disable":
+            validateNumArgs(args, 2);
+            repo.setSparseCheckout(null);
+            break;
+        default:
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** Reads the commit named by a possibly abbreviated id, exiting if
+     *  there is no such commit.
+     *  @param repo repository that contains the commit
+     *  @param id possibly abbreviated commit id
+     *  @return commit with that id
+     */
+    public static Commit readCommitArg(Repo repo, String id) {
+        String commit = checkAbbreviatedID(id);
+        if (commit == null || !Utils.join(repo.getCommits(), commit).
+                exists()) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        return repo.readCommit(commit);
+    }
+
     /** Checks for an abbreviated ID.
      *  @param id potentially abbreviated id
      *  @return full length hash if unique, otherwise returns id
@@ -370,15 +816,17 @@ public class Main {
     public static String checkAbbreviatedID(String id) {
         String commit = null;
         Repo repo = Repo.fromFile(GITLET_FOLDER);
-        if (id.length() < SHA1_LENGTH) {
-            for (File f : repo.getCommits().listFiles()) {
-                if (f.getName().substring(0, id.length()).equals(
-                        id)) {
-                    if (commit != null) {
-                        commit = id;
-                        break;
+        if (id.length() < ObjectFormat.idLength()) {
+            try (DirectoryFiles files = new DirectoryFiles(
+                    repo.getCommits())) {
+                for (File f : files) {
+                    if (f.getName().startsWith(id)) {
+                        if (commit != null) {
+                            commit = id;
+                            break;
+                        }
+                        commit = f.getName();
                     }
-                    commit = f.getName();
                 }
             }
         } else {
@@ -390,8 +838,7 @@ public class Main {
     /** Checks if the repository has already been initialized. */
     public static void checkInitialized() {
         if (!GITLET_FOLDER.exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw Utils.error("Not in an initialized Gitlet directory.");
         }
     }
 
@@ -402,20 +849,22 @@ public class Main {
      */
     public static void validateNumArgs(String[] args, int n) {
         if (args.length != n) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
     }
 
     /** Print case for no command that exists. */
     public static void noCommandExit() {
-        System.out.println("No command with that name exists.");
-        System.exit(0);
+        throw Utils.error("No command with that name exists.");
     }
 
     /** Main metadata folder. */
     static final File GITLET_FOLDER = Utils.join(".", ".gitlet");
 
-    /** Appropriate sha1 hash length. */
-    static final int SHA1_LENGTH = 40;
+    /** Commands after which maintenance is started if it is due. */
+    private static final List<String> AUTO_MAINTAINED =
+        Arrays.asList("commit", "merge", "fetch", "pull");
+
+    /** True while a batch is running. */
+    private static boolean _inBatch;
 }
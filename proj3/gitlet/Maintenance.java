@@ -0,0 +1,367 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+
+/** Upkeep of a repository, run by "gitlet maintenance" or automatically.
+ *  Every object is stored loose, in a file of its own, and commits copied
+ *  from remotes lack the headers and path filters that log, find and
+ *  global-log read, so reads slow down as objects pile up. Each process
+ *  counts the objects it stores, and the commits among them, and at the
+ *  end of every command adds the counts to those saved in the gitlet
+ *  folder they went to; index builds subtract from the second. After
+ *  commit, merge, fetch and pull, once the objects stored since the last
+ *  run reach GITLET_AUTO_OBJECTS, or the commits left unindexed reach
+ *  GITLET_AUTO_UNINDEXED, maintenance is started in a detached process at
+ *  the lowest priority, and the command returns at once. A threshold of 0
+ *  turns its check off.
+ *
+ *  A run prunes the commits and blobs that no branch, remote branch or
+ *  staged file reaches and that are older than PRUNE_GRACE, along with
+ *  the headers and path filters of pruned commits, builds the missing
+ *  headers and path filters of the rest, and drops the stat cache entries
+ *  of files that are gone. A lock file keeps runs from overlapping.
+ *  @author Colby Chang
+ */
+class Maintenance implements Serializable {
+
+    /** Counts an object just stored.
+     *  @param dir directory of commits or blobs in which it was stored
+     */
+    static synchronized void stored(File dir) {
+        long[] counts = _pending.computeIfAbsent(gitletFolder(dir),
+            k -> new long[2]);
+        counts[0] += 1;
+        if (dir.getName().equals("commits")) {
+            counts[1] += 1;
+        }
+    }
+
+    /** Marks an object that a command reuses, instead of storing it again,
+     *  as just written, so that a run pruning old unreachable objects
+     *  spares it now that the command may make it reachable.
+     *  @param file file of the object
+     */
+    static void reused(File file) {
+        file.setLastModified(System.currentTimeMillis());
+    }
+
+    /** Counts the header and path filter of a commit just built.
+     *  @param dir directory of commits holding it
+     */
+    static synchronized void indexed(File dir) {
+        _pending.computeIfAbsent(gitletFolder(dir), k -> new long[2])[1] -= 1;
+    }
+
+    /** Saves the counts of the objects stored by a command, and starts
+     *  maintenance of a repository in the background if they have crossed
+     *  a threshold.
+     *  @param gitletFolder gitlet folder of the repository
+     *  @param check true if the command may start maintenance
+     */
+    static synchronized void afterCommand(File gitletFolder, boolean check) {
+        for (Map.Entry<File, long[]> entry : _pending.entrySet()) {
+            if (Utils.join(entry.getKey(), "refs").isDirectory()) {
+                Maintenance state = fromFile(entry.getKey());
+                state._objects += entry.getValue()[0];
+                state._unindexed = Math.max(0,
+                        state._unindexed + entry.getValue()[1]);
+                state.save(entry.getKey());
+            }
+        }
+        _pending.clear();
+        if (check && gitletFolder.isDirectory()
+                && fromFile(gitletFolder).isDue()) {
+            detach(gitletFolder);
+        }
+    }
+
+    /** Runs maintenance of a repository, printing what it did. A detached
+     *  run is handed the lock that the command starting it took, through
+     *  the token in LOCK_TOKEN; any other run takes the lock itself.
+     *  @param repo the repository
+     *  @param pruneNow true to prune unreachable objects however recent
+     */
+    static void run(Repo repo, boolean pruneNow) {
+        File lock = Utils.join(repo.getGitletFolder(), LOCK_NAME);
+        String token = System.getenv(LOCK_TOKEN);
+        if (token == null || !holds(lock, token)) {
+            token = lock(lock);
+        }
+        if (token == null) {
+            throw Utils.error("Maintenance is already running.");
+        }
+        try {
+            new Maintenance().save(repo.getGitletFolder());
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+            long cutoff = pruneNow ? Long.MAX_VALUE
+                : System.currentTimeMillis() - PRUNE_GRACE;
+            int pruned = prune(repo, cutoff);
+            int indexed = index(repo);
+            StatCache cache = StatCache.fromFile(repo.getGitletFolder());
+            int dropped = cache.prune();
+            cache.saveStatCache(repo.getGitletFolder());
+            System.out.printf("Pruned %d objects, indexed %d commits, "
+                    + "dropped %d stat cache entries.%n", pruned, indexed,
+                    dropped);
+        } finally {
+            unlock(lock, token);
+        }
+    }
+
+    /** Deletes the commits and blobs that are unreachable and were last
+     *  written before a cutoff, with the headers and filters of the
+     *  commits.
+     *  @param repo the repository
+     *  @param cutoff time, in milliseconds since the epoch, after which
+     *                objects are kept
+     *  @return number of objects deleted
+     */
+    private static int prune(Repo repo, long cutoff) {
+        HashSet<String> heads = new HashSet<String>();
+        repo.addBranchHeads(repo.getHeads(), heads);
+        IdSet commits = new IdSet();
+        for (String head : heads) {
+            if (repo.hasCommit(head) && !commits.contains(head)) {
+                commits.addAll(repo.ancestors(head));
+            }
+        }
+        IdSet blobs = new IdSet();
+        for (String id : commits) {
+            Commit commit = repo.readCommit(id);
+            if (commit.hasBlobs()) {
+                for (String fileName : commit.getFileNames()) {
+                    blobs.add(commit.getBlobHash(fileName));
+                }
+            }
+        }
+        StagingArea area = StagingArea.fromFile(repo.getGitletFolder());
+        for (String fileName : area.filesStagedForAddition()) {
+            blobs.add(area.getFromAddition(fileName));
+        }
+        int pruned = 0;
+        try (DirectoryFiles files = new DirectoryFiles(repo.getCommits())) {
+            for (File file : files) {
+                String id = file.getName();
+                if (!commits.contains(id) && file.lastModified() < cutoff
+                        && file.delete()) {
+                    Utils.join(repo.getHeaders(), id).delete();
+                    Utils.join(repo.getFilters(), id).delete();
+                    pruned += 1;
+                }
+            }
+        }
+        try (DirectoryFiles files = new DirectoryFiles(repo.getBlobs())) {
+            for (File file : files) {
+                if (!blobs.contains(file.getName())
+                        && file.lastModified() < cutoff && file.delete()) {
+                    pruned += 1;
+                }
+            }
+        }
+        return pruned;
+    }
+
+    /** Builds the missing headers and path filters of every commit.
+     *  @param repo the repository
+     *  @return number of commits that lacked either
+     */
+    private static int index(Repo repo) {
+        int indexed = 0;
+        try (DirectoryFiles files = new DirectoryFiles(repo.getCommits())) {
+            for (File file : files) {
+                String id = file.getName();
+                boolean header = Utils.join(repo.getHeaders(), id).exists();
+                boolean filter = Utils.join(repo.getFilters(), id).exists();
+                if (!header) {
+                    repo.getHeader(id);
+                }
+                if (!filter) {
+                    repo.getPathFilter(id);
+                }
+                if (!header || !filter) {
+                    indexed += 1;
+                }
+            }
+        }
+        return indexed;
+    }
+
+    /** Checks if the counts have crossed a threshold.
+     *  @return true if maintenance is due
+     */
+    private boolean isDue() {
+        return AUTO_OBJECTS > 0 && _objects >= AUTO_OBJECTS
+            || AUTO_UNINDEXED > 0 && _unindexed >= AUTO_UNINDEXED;
+    }
+
+    /** Takes the lock, or a stale one left by a run that died, writing
+     *  into it a token known only to this process.
+     *  @param lock the lock file
+     *  @return the token, or null if the lock was not taken
+     */
+    private static String lock(File lock) {
+        try {
+            if (!lock.createNewFile()
+                && !(lock.lastModified() < System.currentTimeMillis()
+                     - STALE_LOCK && lock.delete()
+                     && lock.createNewFile())) {
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        String token = Utils.hash(UUID.randomUUID().toString());
+        Utils.writeContents(lock, token);
+        return token;
+    }
+
+    /** Checks if a lock is held under a token.
+     *  @param lock the lock file
+     *  @param token token written when it was taken
+     *  @return true if the lock holds that token
+     */
+    private static boolean holds(File lock, String token) {
+        try {
+            return lock.isFile()
+                && token.equals(Utils.readContentsAsString(lock));
+        } catch (IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /** Releases a lock, unless it has since been taken under another
+     *  token, as a run that finds it stale may do.
+     *  @param lock the lock file
+     *  @param token token written when it was taken
+     */
+    private static void unlock(File lock, String token) {
+        if (holds(lock, token)) {
+            lock.delete();
+        }
+    }
+
+    /** Starts "gitlet maintenance" in a detached process at the lowest
+     *  priority, handing it the lock, unless a run holds the lock.
+     *  @param gitletFolder gitlet folder of the repository
+     */
+    private static void detach(File gitletFolder) {
+        File lock = Utils.join(gitletFolder, LOCK_NAME);
+        String token = lock(lock);
+        if (token == null) {
+            return;
+        }
+        ArrayList<String> command = new ArrayList<String>();
+        if (NICE.canExecute()) {
+            command.add(NICE.getPath());
+            command.add("-n");
+            command.add("19");
+        }
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("maintenance");
+        ProcessBuilder builder = new ProcessBuilder(command)
+            .directory(gitletFolder.getAbsoluteFile().getParentFile())
+            .redirectOutput(Redirect.DISCARD)
+            .redirectError(Redirect.DISCARD);
+        builder.environment().remove("GITLET_TRACE");
+        builder.environment().put(LOCK_TOKEN, token);
+        try {
+            builder.start().getOutputStream().close();
+        } catch (IOException excp) {
+            unlock(lock, token);
+        }
+    }
+
+    /** Saves these counts.
+     *  @param gitletFolder folder in which gitlet data is stored
+     */
+    private void save(File gitletFolder) {
+        Utils.writeObject(Utils.join(gitletFolder, FILE_NAME), this);
+    }
+
+    /** Returns the counts saved in a repository.
+     *  @param gitletFolder folder in which gitlet data is stored
+     *  @return the saved counts, or zeros if there are none
+     */
+    private static Maintenance fromFile(File gitletFolder) {
+        File file = Utils.join(gitletFolder, FILE_NAME);
+        if (!file.exists()) {
+            return new Maintenance();
+        }
+        return Utils.readObject(file, Maintenance.class);
+    }
+
+    /** Returns the gitlet folder holding a directory of objects.
+     *  @param dir directory of commits or blobs
+     *  @return its gitlet folder, as a normalized absolute path
+     */
+    private static File gitletFolder(File dir) {
+        return dir.getAbsoluteFile().toPath().normalize().getParent()
+            .getParent().toFile();
+    }
+
+    /** Reads a threshold from the environment.
+     *  @param name name of the variable
+     *  @param otherwise threshold if it is unset or malformed
+     *  @return the threshold
+     */
+    private static long threshold(String name, long otherwise) {
+        String value = System.getenv(name);
+        if (value == null || !value.matches("\\d{1,18}")) {
+            return otherwise;
+        }
+        return Long.parseLong(value);
+    }
+
+    /** Name of the file, in the .gitlet folder, holding the counts. */
+    static final String FILE_NAME = "maintenance";
+
+    /** Name of the file, in the .gitlet folder, held while a run is on. */
+    static final String LOCK_NAME = "maintenance.lock";
+
+    /** Variable through which a detached run is handed the token of the
+     *  lock taken for it. */
+    private static final String LOCK_TOKEN = "GITLET_MAINTENANCE_LOCK";
+
+    /** Number of objects stored after which maintenance is started. */
+    static final long AUTO_OBJECTS = threshold("GITLET_AUTO_OBJECTS", 6700);
+
+    /** Number of unindexed commits after which maintenance is started. */
+    static final long AUTO_UNINDEXED =
+        threshold("GITLET_AUTO_UNINDEXED", 1000);
+
+    /** Time, in milliseconds, for which unreachable objects are kept, so
+     *  that those a running command has just stored are not pruned. */
+    static final long PRUNE_GRACE = 14L * 24 * 60 * 60 * 1000;
+
+    /** Age, in milliseconds, after which a lock is taken to be left by a
+     *  run that died. */
+    private static final long STALE_LOCK = 60L * 60 * 1000;
+
+    /** Program by which detached runs are given the lowest priority. */
+    private static final File NICE = new File("/usr/bin/nice");
+
+    /** Counts of the objects, and of the commits less the indexed ones,
+     *  stored by this process and not yet saved, by gitlet folder. */
+    private static HashMap<File, long[]> _pending =
+        new HashMap<File, long[]>();
+
+    /** Number of objects stored since the last run. */
+    private long _objects;
+
+    /** Number of commits stored since the last run that lack an index. */
+    private long _unindexed;
+
+    /** Version of the serialized form of the saved counts. */
+    private static final long serialVersionUID = -5627941697616246216L;
+}
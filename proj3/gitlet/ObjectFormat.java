@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** The hash function that names the objects of a repository, chosen when
+ *  it is initialized and recorded in its object-format file. Repositories
+ *  without one use SHA-1, as every repository did before the choice was
+ *  offered. A process works in one repository at a time, so the format
+ *  of that repository is kept here for Utils.hash.
+ *  @author Colby Chang
+ */
+class ObjectFormat {
+
+    /** Uses the object format of a repository for the rest of the process.
+     *  @param gitletFolder .gitlet folder of the repository
+     */
+    static void use(File gitletFolder) {
+        _name = of(gitletFolder);
+        _algorithm = algorithm(_name);
+    }
+
+    /** Records the object format of a new repository, and uses it.
+     *  @param gitletFolder .gitlet folder of the repository
+     *  @param name name of the format
+     */
+    static void save(File gitletFolder, String name) {
+        check(name);
+        if (!name.equals(DEFAULT)) {
+            Utils.writeContents(Utils.join(gitletFolder, FILE_NAME), name);
+        }
+        use(gitletFolder);
+    }
+
+    /** Checks that a format exists.
+     *  @param name name of the format
+     */
+    static void check(String name) {
+        algorithm(name);
+    }
+
+    /** Returns the object format of a repository.
+     *  @param gitletFolder .gitlet folder of the repository
+     *  @return name of the format
+     */
+    static String of(File gitletFolder) {
+        File file = Utils.join(gitletFolder, FILE_NAME);
+        if (!file.isFile()) {
+            return DEFAULT;
+        }
+        return Utils.readContentsAsString(file).trim();
+    }
+
+    /** Returns the name of the format in use. */
+    static String name() {
+        return _name;
+    }
+
+    /** Returns the MessageDigest algorithm of the format in use. */
+    static String algorithm() {
+        return _algorithm;
+    }
+
+    /** Returns the length of an object id in the format in use. */
+    static int idLength() {
+        return 2 * newDigest().getDigestLength();
+    }
+
+    /** Returns a new digest for the format in use. */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(_algorithm);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                    + _algorithm);
+        }
+    }
+
+    /** Returns the MessageDigest algorithm of a format.
+     *  @param name name of the format
+     *  @return its algorithm
+     */
+    private static String algorithm(String name) {
+        switch (name) {
+        case "sha1":
+            return "SHA-1";
+        case "sha256":
+            return "SHA-256";
+        default:
+            throw Utils.error("Unknown object format: %s.", name);
+        }
+    }
+
+    /** Name of the file, in the .gitlet folder, holding the format. */
+    static final String FILE_NAME = "object-format";
+
+    /** Format of repositories without an object-format file. */
+    static final String DEFAULT = "sha1";
+
+    /** Name of the format in use. */
+    private static String _name = DEFAULT;
+
+    /** MessageDigest algorithm of the format in use. */
+    private static String _algorithm = "SHA-1";
+}
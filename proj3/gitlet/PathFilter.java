@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/** Bloom filter of the file names a commit changed relative to its first
+ *  parent. Filters are stored beside the commits they describe, so a walk
+ *  limited to one path only has to read the commits that may have
+ *  touched it. The walk still opens one filter file per first-parent
+ *  commit, so its cost grows with the length of the history rather than
+ *  with the number of commits that touched the path.
+ *  @author Colby Chang
+ */
+public class PathFilter implements Serializable {
+
+    /** Creates a new PathFilter.
+     *  @param parent hash of the first parent, or null for a root commit
+     *  @param paths names of the files changed relative to parent
+     */
+    public PathFilter(String parent, ArrayList<String> paths) {
+        _parent = parent;
+        _numBits = Math.max(MIN_BITS, paths.size() * BITS_PER_PATH);
+        _bits = new long[(_numBits + Long.SIZE - 1) / Long.SIZE];
+        for (String path : paths) {
+            int h1 = path.hashCode();
+            int h2 = mix(h1);
+            for (int i = 0; i < NUM_HASHES; i += 1) {
+                int bit = Math.floorMod(h1 + i * h2, _numBits);
+                _bits[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+            }
+        }
+    }
+
+    /** Builds the filter of files that differ between commit and parent.
+     *  @param commit commit whose changes are recorded
+     *  @param parent first parent of commit, or null for a root commit
+     *  @param parentHash hash of parent, or null for a root commit
+     *  @return filter of changed file names
+     */
+    public static PathFilter fromCommits(Commit commit, Commit parent,
+                                         String parentHash) {
+        ArrayList<String> changed = new ArrayList<String>();
+        if (commit.hasBlobs()) {
+            for (String fileName : commit.getFileNames()) {
+                if (parent == null || !commit.checkSameVersion(fileName,
+                        parent)) {
+                    changed.add(fileName);
+                }
+            }
+        }
+        if (parent != null && parent.hasBlobs()) {
+            for (String fileName : parent.getFileNames()) {
+                if (!commit.isTrackingFile(new File(fileName))) {
+                    changed.add(fileName);
+                }
+            }
+        }
+        return new PathFilter(parentHash, changed);
+    }
+
+    /** Checks if the commit may have changed the file with the given name.
+     *  False positives are possible, false negatives are not.
+     *  @param fileName file name to be checked
+     *  @return false if the commit certainly did not change fileName
+     */
+    public boolean mightContain(String fileName) {
+        int h1 = fileName.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < NUM_HASHES; i += 1) {
+            int bit = Math.floorMod(h1 + i * h2, _numBits);
+            if ((_bits[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the hash of the first parent of the filtered commit.
+     *  @return first parent hash, or null for a root commit
+     */
+    public String getParent() {
+        return _parent;
+    }
+
+    /** Saves filter to be accessed later.
+     *  @param filters directory in which to save filter
+     *  @param commitHash hash of the commit this filter describes
+     */
+    public void saveFilter(File filters, String commitHash) {
+        if (!filters.exists()) {
+            filters.mkdir();
+        }
+        Utils.writeObject(Utils.join(filters, commitHash), this);
+    }
+
+    /** Returns a second hash derived from h, using the MurmurHash3
+     *  finalizer.
+     *  @param h first hash
+     *  @return second hash, forced odd so that probes cover the table
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+
+    /** Number of bits allocated per changed path. */
+    private static final int BITS_PER_PATH = 10;
+
+    /** Smallest filter size, in bits. */
+    private static final int MIN_BITS = 64;
+
+    /** Number of bits set per path. */
+    private static final int NUM_HASHES = 7;
+
+    /** Hash of the first parent of the filtered commit. */
+    private String _parent;
+
+    /** Number of usable bits in _bits. */
+    private int _numBits;
+
+    /** Bit set of the filter. */
+    private long[] _bits;
+
+    /** Version of the serialized form, pinned so that filters saved
+     *  before a change to this class still load. */
+    private static final long serialVersionUID = -4990856155684727908L;
+}
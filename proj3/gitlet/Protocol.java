@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+/** The protocol spoken between a Transport and a Server over TCP. Every
+ *  message is a frame: a type byte, the length of the payload as a
+ *  four-byte int, and the payload, whose fields are written as by a
+ *  DataOutputStream, strings with writeUTF and byte arrays preceded by
+ *  their lengths. A client may send several requests before reading any
+ *  reply, and the server answers them in order. The requests and their
+ *  replies are
+ *
+ *    HELLO version format              HELLO version format
+ *    LIST_REFS                         REFS n (branch id)...
+ *    FETCH n want... m have...         OBJECT... DONE count
+ *    PUSH branch old new, OBJECT...,
+ *      DONE count                      OK
+ *
+ *  where an OBJECT is a kind, COMMIT or BLOB, an id and the serialized
+ *  object, exactly as stored, and old is empty for a new branch. A FETCH
+ *  streams every commit reachable from the wants but not from the haves
+ *  the server has, each after the blobs it tracks that the client may
+ *  lack. Any request may instead be answered by ERROR message, after
+ *  which the connection is closed.
+ *  @author Colby Chang
+ */
+class Protocol {
+
+    /** Version of the protocol. */
+    static final int VERSION = 1;
+
+    /** Types of frames. */
+    static final byte HELLO = 1, LIST_REFS = 2, REFS = 3, FETCH = 4,
+        PUSH = 5, OBJECT = 6, DONE = 7, OK = 8, ERROR = 9;
+
+    /** Kinds of objects. */
+    static final byte COMMIT = 0, BLOB = 1;
+
+    /** Largest payload accepted in a frame. */
+    static final int MAX_PAYLOAD = 1 << 30;
+
+    /** Writes a frame, without flushing it.
+     *  @param out stream to the other side
+     *  @param type type of the frame
+     *  @param fields fields of the payload, each a String, Integer, Byte or
+     *                byte array
+     *  @throws IOException if the frame cannot be written
+     */
+    static void send(DataOutputStream out, byte type, Object... fields)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        for (Object field : fields) {
+            if (field instanceof String) {
+                payload.writeUTF((String) field);
+            } else if (field instanceof Integer) {
+                payload.writeInt((Integer) field);
+            } else if (field instanceof Byte) {
+                payload.writeByte((Byte) field);
+            } else {
+                byte[] array = (byte[]) field;
+                payload.writeInt(array.length);
+                payload.write(array);
+            }
+        }
+        out.writeByte(type);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /** Reads a frame.
+     *  @param in stream from the other side
+     *  @return the frame, or null if the stream has ended
+     *  @throws IOException if the frame cannot be read or is malformed
+     */
+    static Frame receive(DataInputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            return null;
+        }
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new IOException("bad frame length " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame((byte) type, payload);
+    }
+
+    /** Reads a frame that must be present.
+     *  @param in stream from the other side
+     *  @return the frame
+     *  @throws IOException if there is none, or it cannot be read
+     */
+    static Frame expect(DataInputStream in) throws IOException {
+        Frame frame = receive(in);
+        if (frame == null) {
+            throw new EOFException();
+        }
+        return frame;
+    }
+
+    /** Writes the commits with the given ids as OBJECT frames, each after
+     *  those of the blobs it tracks that were not skipped, followed by a
+     *  DONE frame with the number of objects, and flushes them.
+     *  @param out stream to the other side
+     *  @param repo repository holding the objects
+     *  @param commits ids of the commits, in any order
+     *  @param skipBlobs ids of the blobs the other side has, to which those
+     *                   written are added
+     *  @throws IOException if the objects cannot be written
+     */
+    static void sendObjects(DataOutputStream out, Repo repo,
+                            Collection<String> commits,
+                            IdSet skipBlobs) throws IOException {
+        int count = 0;
+        for (String id : commits) {
+            Commit commit = repo.readCommit(id);
+            if (commit.hasBlobs()) {
+                for (String fileName : commit.getFileNames()) {
+                    String hash = commit.getBlobHash(fileName);
+                    if (skipBlobs.add(hash)) {
+                        send(out, OBJECT, BLOB, hash, Utils.readContents(
+                                Utils.join(repo.getBlobs(), hash)));
+                        count += 1;
+                    }
+                }
+            }
+            send(out, OBJECT, COMMIT, id, Utils.readContents(
+                    Utils.join(repo.getCommits(), id)));
+            count += 1;
+        }
+        send(out, DONE, count);
+        out.flush();
+    }
+
+    /** Reads OBJECT frames up to a DONE frame, storing every object that
+     *  is missing from a repository once its id is checked, and marking
+     *  the others as reused.
+     *  @param in stream from the other side
+     *  @param repo repository in which objects are stored
+     *  @return number of objects stored
+     *  @throws IOException if the frames cannot be read or are malformed
+     */
+    static int receiveObjects(DataInputStream in, Repo repo)
+        throws IOException {
+        int stored = 0;
+        for (Frame frame = expect(in); frame.type() != DONE;
+             frame = expect(in)) {
+            if (frame.type() == ERROR) {
+                throw Utils.error(frame.string());
+            } else if (frame.type() != OBJECT) {
+                throw new IOException("unexpected frame " + frame.type());
+            }
+            byte kind = frame.single();
+            String id = frame.string();
+            byte[] contents = frame.bytes();
+            if (!Utils.hash(contents).equals(id)) {
+                throw Utils.error("Remote sent a corrupt object.");
+            }
+            File file = Utils.join(kind == COMMIT ? repo.getCommits()
+                    : repo.getBlobs(), id);
+            if (!file.exists()) {
+                Utils.writeContents(file, contents);
+                Maintenance.stored(file.getParentFile());
+                stored += 1;
+            } else {
+                Maintenance.reused(file);
+            }
+        }
+        return stored;
+    }
+
+    /** A frame that has been read, whose fields are read in order. */
+    static class Frame {
+
+        /** Creates a new Frame.
+         *  @param type type of the frame
+         *  @param payload its payload
+         */
+        Frame(byte type, byte[] payload) {
+            _type = type;
+            _payload = new DataInputStream(new ByteArrayInputStream(
+                    payload));
+        }
+
+        /** Returns the type of this frame. */
+        byte type() {
+            return _type;
+        }
+
+        /** Returns the next field, a string.
+         *  @throws IOException if the payload has no string next
+         */
+        String string() throws IOException {
+            return _payload.readUTF();
+        }
+
+        /** Returns the next field, an int.
+         *  @throws IOException if the payload has no int next
+         */
+        int integer() throws IOException {
+            return _payload.readInt();
+        }
+
+        /** Returns the next field, a byte.
+         *  @throws IOException if the payload has no byte next
+         */
+        byte single() throws IOException {
+            return _payload.readByte();
+        }
+
+        /** Returns the next field, a byte array.
+         *  @throws IOException if the payload has no byte array next
+         */
+        byte[] bytes() throws IOException {
+            int length = _payload.readInt();
+            if (length < 0 || length > _payload.available()) {
+                throw new IOException("bad field length " + length);
+            }
+            byte[] bytes = new byte[length];
+            _payload.readFully(bytes);
+            return bytes;
+        }
+
+        /** Type of this frame. */
+        private byte _type;
+
+        /** Stream over the fields not yet read. */
+        private DataInputStream _payload;
+    }
+}
@@ -0,0 +1,229 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/** Detects files renamed between two commits. Each deleted and added file
+ *  is summarized by a MinHash signature of its lines, and locality-
+ *  sensitive hashing over bands of the signatures proposes candidate
+ *  pairs, so pairing is near-linear in the number of files instead of
+ *  comparing every deleted file with every added one.
+ *  @author Colby Chang
+ */
+public class RenameDetector {
+
+    /** Creates a new RenameDetector.
+     *  @param threshold minimum estimated similarity of a rename, as a
+     *                   percentage of shared lines
+     */
+    public RenameDetector(int threshold) {
+        _threshold = threshold;
+    }
+
+    /** Finds the files that were renamed from base to side.
+     *  @param base commit before the renames
+     *  @param side commit after the renames
+     *  @param blobs directory in which blobs are stored
+     *  @return mapping of old file names to new file names
+     */
+    public HashMap<String, String> detect(Commit base, Commit side,
+                                          File blobs) {
+        HashMap<String, String> renames = new HashMap<String, String>();
+        ArrayList<String> deleted = new ArrayList<String>();
+        ArrayList<String> added = new ArrayList<String>();
+        if (base.hasBlobs()) {
+            for (String fileName : base.getFileNames()) {
+                if (!side.isTrackingFile(new File(fileName))) {
+                    deleted.add(fileName);
+                }
+            }
+        }
+        if (side.hasBlobs()) {
+            for (String fileName : side.getFileNames()) {
+                if (!base.isTrackingFile(new File(fileName))) {
+                    added.add(fileName);
+                }
+            }
+        }
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+        HashMap<String, int[]> signatures = new HashMap<String, int[]>();
+        for (String fileName : deleted) {
+            signatures.put(fileName, signature(
+                    base.getBlob(fileName, blobs).getContents()));
+        }
+        for (String fileName : added) {
+            signatures.put(fileName, signature(
+                    side.getBlob(fileName, blobs).getContents()));
+        }
+        deleted.removeIf(fileName -> signatures.get(fileName) == null);
+        added.removeIf(fileName -> signatures.get(fileName) == null);
+        HashMap<String, ArrayList<String>> buckets =
+                new HashMap<String, ArrayList<String>>();
+        for (String fileName : deleted) {
+            for (String key : bandKeys(signatures.get(fileName))) {
+                buckets.computeIfAbsent(key,
+                    k -> new ArrayList<String>()).add(fileName);
+            }
+        }
+        ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+        for (String newName : added) {
+            HashSet<String> seen = new HashSet<String>();
+            for (String key : bandKeys(signatures.get(newName))) {
+                ArrayList<String> bucket = buckets.get(key);
+                if (bucket == null) {
+                    continue;
+                }
+                for (String oldName : bucket) {
+                    if (seen.add(oldName)) {
+                        int score = similarity(signatures.get(oldName),
+                                signatures.get(newName));
+                        if (score >= _threshold) {
+                            candidates.add(new Candidate(oldName, newName,
+                                    score));
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(candidates);
+        HashSet<String> paired = new HashSet<String>();
+        for (Candidate candidate : candidates) {
+            if (!renames.containsKey(candidate._oldName)
+                    && !paired.contains(candidate._newName)) {
+                renames.put(candidate._oldName, candidate._newName);
+                paired.add(candidate._newName);
+            }
+        }
+        return renames;
+    }
+
+    /** Returns the MinHash signature of the set of lines of contents.
+     *  @param contents file contents
+     *  @return signature with NUM_HASHES entries, or null if contents is
+     *          empty, since empty files are never paired
+     */
+    static int[] signature(String contents) {
+        if (contents.isEmpty()) {
+            return null;
+        }
+        int[] sig = new int[NUM_HASHES];
+        Arrays.fill(sig, Integer.MAX_VALUE);
+        for (String line : Diff.lines(contents)) {
+            int h = line.hashCode();
+            for (int i = 0; i < NUM_HASHES; i += 1) {
+                sig[i] = Math.min(sig[i], mix(h ^ SEEDS[i]));
+            }
+        }
+        return sig;
+    }
+
+    /** Returns the estimated similarity of the sets summarized by two
+     *  signatures.
+     *  @param a first signature
+     *  @param b second signature
+     *  @return percentage of matching signature entries
+     */
+    static int similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < NUM_HASHES; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return same * 100 / NUM_HASHES;
+    }
+
+    /** Returns the LSH bucket keys of a signature, one per band.
+     *  @param sig signature
+     *  @return bucket keys
+     */
+    private static String[] bandKeys(int[] sig) {
+        String[] keys = new String[NUM_HASHES / ROWS];
+        for (int band = 0; band < keys.length; band += 1) {
+            StringBuilder key = new StringBuilder().append(band);
+            for (int row = 0; row < ROWS; row += 1) {
+                key.append(':').append(sig[band * ROWS + row]);
+            }
+            keys[band] = key.toString();
+        }
+        return keys;
+    }
+
+    /** Returns a well-mixed hash of h, using the MurmurHash3 finalizer.
+     *  @param h value to be mixed
+     *  @return mixed value
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** A possible rename, ordered from most to least similar. */
+    private static class Candidate implements Comparable<Candidate> {
+
+        /** Creates a new Candidate.
+         *  @param oldName name in the base commit
+         *  @param newName name in the side commit
+         *  @param score estimated similarity
+         */
+        Candidate(String oldName, String newName, int score) {
+            _oldName = oldName;
+            _newName = newName;
+            _score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (_score != other._score) {
+                return Integer.compare(other._score, _score);
+            }
+            int cmp = _oldName.compareTo(other._oldName);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return _newName.compareTo(other._newName);
+        }
+
+        /** Name in the base commit. */
+        private final String _oldName;
+
+        /** Name in the side commit. */
+        private final String _newName;
+
+        /** Estimated similarity. */
+        private final int _score;
+    }
+
+    /** Default minimum similarity of a rename, as a percentage. */
+    static final int DEFAULT_THRESHOLD = 50;
+
+    /** Number of hash functions in a signature. */
+    private static final int NUM_HASHES = 64;
+
+    /** Number of signature entries per LSH band. */
+    private static final int ROWS = 2;
+
+    /** Seeds of the hash functions. */
+    private static final int[] SEEDS = new int[NUM_HASHES];
+
+    static {
+        int seed = 0x9e3779b9;
+        for (int i = 0; i < NUM_HASHES; i += 1) {
+            seed = mix(seed + 0x9e3779b9);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /** Minimum similarity of a rename, as a percentage. */
+    private int _threshold;
+}
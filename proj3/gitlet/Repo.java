@@ -1,13 +1,31 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /** Gitlet repository that handles all commands.
  *  @author Colby Chang
@@ -25,7 +43,11 @@ public class Repo implements Serializable {
         _heads = Utils.join(_refs, "heads");
         _blobs = Utils.join(_refs, "blobs");
         _commits = Utils.join(_refs, "commits");
+        _filters = Utils.join(_refs, "filters");
+        _origins = Utils.join(_refs, "origins");
+        _headers = Utils.join(_refs, "headers");
         _remotes = new HashMap<String, String>();
+        _promisors = new HashSet<String>();
     }
     /** Initializes repository. */
     public void init() {
@@ -34,6 +56,9 @@ public class Repo implements Serializable {
         _heads.mkdir();
         _blobs.mkdir();
         _commits.mkdir();
+        _filters.mkdir();
+        _origins.mkdir();
+        _headers.mkdir();
         initCommit.saveCommit(_commits);
         new Branch("master", initCommit, _commits, _heads).saveBranch();
         new StagingArea().saveStagingArea();
@@ -41,29 +66,42 @@ public class Repo implements Serializable {
             _head.createNewFile();
             _stagingarea.createNewFile();
         } catch (IOException io) {
-            System.exit(0);
+            throw new GitletException();
         }
         Utils.writeContents(_head, "refs/heads/master");
         saveRepo();
     }
 
-    /** Stages file for addition.
+    /** Stages file for addition. Whether the head already has this
+     *  version is one lookup of the file's name in the head's blob map.
      *  @param file file to be added
      */
     public void add(File file) {
-        Blob blob = new Blob(file);
-        blob.saveBlob(_blobs);
+        String name = WorkingTree.path(file);
+        StatCache cache = StatCache.fromFile(_gitletfolder);
+        String hash = cache.lookup(file, name);
+        if (hash == null || !Utils.join(_blobs, hash).exists()) {
+            byte[] contents = Utils.readContents(file);
+            Blob blob = new Blob(name, new String(contents,
+                    StandardCharsets.UTF_8));
+            blob.saveBlob(_blobs);
+            hash = Utils.hash(Utils.serialize(blob));
+            cache.record(name, file, contents, hash);
+        } else {
+            Maintenance.reused(Utils.join(_blobs, hash));
+        }
         Commit headCommit = getCurrentBranch().getHead();
         StagingArea area = StagingArea.fromFile(_gitletfolder);
-        if (!headCommit.isTracking(blob)) {
-            area.stageForAddition(blob.getName(), Utils.sha1(Utils.serialize(
-                    blob)));
-        } else if (area.isStagedForAddition(blob.getName())) {
-            area.unstageAddition(blob.getName());
-        } else if (area.isStagedForRemoval(blob.getName())) {
-            area.unstageRemoval(blob.getName());
+        if (!headCommit.hasBlobs()
+                || !hash.equals(headCommit.getBlobHash(name))) {
+            area.stageForAddition(name, hash);
+        } else if (area.isStagedForAddition(name)) {
+            area.unstageAddition(name);
+        } else if (area.isStagedForRemoval(name)) {
+            area.unstageRemoval(name);
         }
         area.saveStagingArea();
+        cache.saveStatCache(_gitletfolder);
     }
 
     /** Creates commit based on staging area.
@@ -86,6 +124,7 @@ public class Repo implements Serializable {
         }
         Commit newCommit = new Commit(message, parent, blobs);
         newCommit.saveCommit(_commits);
+        indexCommit(newCommit, parent, currentBranch.getHeadId());
         currentBranch.updateBranchHead(newCommit);
         area.clear();
         area.saveStagingArea();
@@ -95,63 +134,124 @@ public class Repo implements Serializable {
      *  @param file file to be removed
      */
     public void remove(File file) {
-        String fileName = file.getName();
+        String fileName = WorkingTree.path(file);
         Commit headCommit = getCurrentBranch().getHead();
         StagingArea area = StagingArea.fromFile(_gitletfolder);
         if (!(area.isStagedForAddition(fileName)
                 || headCommit.isTrackingFile(file))) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw Utils.error("No reason to remove the file.");
         } else if (area.isStagedForAddition(fileName)) {
             area.unstageAddition(fileName);
         }
         if (headCommit.isTrackingFile(file)) {
             area.stageForRemoval(fileName);
-            Utils.restrictedDelete(fileName);
+            WorkingTree.delete(fileName);
         }
         area.saveStagingArea();
     }
 
     /** Prints all commits in current branch, in order from most recent. */
     public void printLog() {
-        Commit commit = getCurrentBranch().getHead();
-        while (commit != null) {
-            System.out.println("===");
-            System.out.println("commit " + Utils.sha1(Utils.serialize(
-                    commit)));
-            if (commit.isMergeCommit()) {
-                System.out.println("Merge: " + commit.getParent().
-                        substring(0, 7) + " " + commit.getMergeParent().
-                        substring(0, 7));
-            }
-            System.out.println("Date: " + commit.getTimestamp());
-            System.out.println(commit.getMessage());
-            System.out.println();
-            if (commit.getParent() == null) {
-                commit = null;
-            } else {
-                commit = Utils.readObject(Utils.join(_commits,
-                        commit.getParent()), Commit.class);
+        printLog(-1, Long.MIN_VALUE, false, null);
+    }
+
+    /** Prints commits in current branch, in order from most recent, reading
+     *  only their headers. Output is buffered, and the walk stops early if
+     *  the output is closed, as when piped into head.
+     *  @param limit maximum number of commits to print, or -1 for no limit
+     *  @param since time, in milliseconds since the epoch, before which
+     *               the walk stops
+     *  @param oneline true to print each commit as its abbreviated hash
+     *                 and message on one line
+     *  @param fileName if not null, only commits that changed the file with
+     *                  this name are printed; commits whose path filter
+     *                  rules it out are skipped without being read
+     */
+    public void printLog(int limit, long since, boolean oneline,
+                         String fileName) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), OUTPUT_BUFFER_SIZE));
+        String id = getCurrentBranch().getHeadId();
+        int count = 0;
+        while (id != null && count != limit) {
+            CommitHeader header = getHeader(id);
+            if (header.getTime() < since) {
+                break;
+            }
+            if (fileName == null || changesFile(id, fileName)) {
+                if (oneline) {
+                    out.println(id.substring(0, 7) + " "
+                            + header.getMessage());
+                } else {
+                    printHeader(out, header, id);
+                }
+                count += 1;
+                if (count % FLUSH_INTERVAL == 0) {
+                    out.flush();
+                    if (System.out.checkError()) {
+                        return;
+                    }
+                }
+            }
+            id = header.getParent();
+            if (id != null && !hasCommit(id)) {
+                id = null;
             }
         }
+        out.flush();
     }
 
-    /** Prints all commits in no particular order. */
+    /** Checks if the commit with the given hash changed a file relative to
+     *  its first parent, consulting its path filter first.
+     *  @param id commit hash
+     *  @param fileName name of the file
+     *  @return true if the commit changed the file
+     */
+    private boolean changesFile(String id, String fileName) {
+        PathFilter filter = getPathFilter(id);
+        if (!filter.mightContain(fileName)) {
+            return false;
+        }
+        Commit commit = readCommit(id);
+        if (filter.getParent() == null || !hasCommit(filter.getParent())) {
+            return commit.isTrackingFile(new File(fileName));
+        }
+        return !commit.checkSameVersion(fileName,
+                readCommit(filter.getParent()));
+    }
+
+    /** Prints a single log entry from a commit header.
+     *  @param out destination
+     *  @param header header of commit to be printed
+     *  @param id hash of commit
+     */
+    private void printHeader(PrintWriter out, CommitHeader header,
+                             String id) {
+        out.println("===");
+        out.println("commit " + id);
+        if (header.isMergeCommit()) {
+            out.println("Merge: " + header.getParent().substring(0, 7) + " "
+                    + header.getMergeParent().substring(0, 7));
+        }
+        out.println("Date: " + header.getTimestamp());
+        out.println(header.getMessage());
+        out.println();
+    }
+
+    /** Prints all commits in no particular order, reading only their
+     *  headers. The commits directory is streamed, and output buffered, so
+     *  memory does not grow with the number of commits.
+     */
     public void printGlobalLog() {
-        for (File commitFile : _commits.listFiles()) {
-            Commit commit = Utils.readObject(commitFile, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + Utils.sha1(Utils.serialize(
-                    commit)));
-            if (commit.isMergeCommit()) {
-                System.out.println("Merge: " + commit.getParent().
-                        substring(0, 7) + " " + commit.getMergeParent().
-                        substring(0, 7));
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), OUTPUT_BUFFER_SIZE));
+        try (DirectoryFiles files = new DirectoryFiles(_commits)) {
+            for (File commitFile : files) {
+                String id = commitFile.getName();
+                printHeader(out, getHeader(id), id);
             }
-            System.out.println("Date: " + commit.getTimestamp());
-            System.out.println(commit.getMessage());
-            System.out.println();
         }
+        out.flush();
     }
 
     /** Prints hashes of all commits with given commit message.
@@ -159,16 +259,17 @@ public class Repo implements Serializable {
      */
     public void find(String message) {
         boolean found  = false;
-        for (File commitFile : _commits.listFiles()) {
-            Commit commit = Utils.readObject(commitFile, Commit.class);
-            if (commit.getMessage().equals(message)) {
-                found = true;
-                System.out.println(Utils.sha1(Utils.serialize(commit)));
+        try (DirectoryFiles files = new DirectoryFiles(_commits)) {
+            for (File commitFile : files) {
+                String id = commitFile.getName();
+                if (getHeader(id).getMessage().equals(message)) {
+                    found = true;
+                    System.out.println(id);
+                }
             }
         }
         if (!found) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+            throw Utils.error("Found no commit with that message.");
         }
         System.out.println();
     }
@@ -182,14 +283,18 @@ public class Repo implements Serializable {
         listBranches();
         listStagedFiles();
         listRemovedFiles();
+        int phase = Trace.beginPhase("modified");
         listModFiles();
+        Trace.endPhase(phase);
+        phase = Trace.beginPhase("untracked");
         listUntrackedFiles();
+        Trace.endPhase(phase);
     }
 
     /** Prints names of all branches, using an '*' to denote current branch. */
     public void listBranches() {
         ArrayList<String> branchNames = new ArrayList<String>();
-        File[] p = _heads.listFiles();
+        File[] p = Utils.listFiles(_heads);
         for (File branchFile :p) {
             branchNames.add(Utils.readObject(branchFile, Branch.class).
                     getName());
@@ -239,34 +344,46 @@ public class Repo implements Serializable {
     /** Prints names of all files that have been modified but not staged. */
     public void listModFiles() {
         StagingArea area = StagingArea.fromFile(_gitletfolder);
+        StatCache cache = StatCache.fromFile(_gitletfolder);
         ArrayList<String> modFiles = new ArrayList<String>();
         Commit currentCommit = getCurrentBranch().getHead();
         for (String fileName : area.filesStagedForAddition()) {
             File file = new File(fileName);
             if (!file.exists()) {
                 modFiles.add(fileName + " (deleted)");
-            } else if (!Utils.readObject(Utils.join(_blobs,
-                    area.getFromAddition(fileName)), Blob.class).getContents().
-                    equals(Utils.readContentsAsString(file))) {
+            } else if (!holdsBlob(cache, file, fileName,
+                    area.getFromAddition(fileName))) {
                 modFiles.add(fileName + " (modified)");
             }
         }
         if (currentCommit.hasBlobs()) {
+            SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
+            ArrayList<String> needed = new ArrayList<String>();
             for (String fileName : currentCommit.getFileNames()) {
+                File file = new File(fileName);
+                String hash = currentCommit.getBlobHash(fileName);
+                if (file.exists() && !cache.matches(file, fileName, hash)) {
+                    needed.add(hash);
+                }
+            }
+            prefetchBlobs(needed);
+            for (String fileName : currentCommit.getFileNames()) {
+                if (!SparseCheckout.includes(sparse, fileName)) {
+                    continue;
+                }
                 File file = new File(fileName);
                 if (!file.exists()) {
                     if (!area.isStaged(fileName)) {
                         modFiles.add(fileName + " (deleted)");
                     }
-                } else {
-                    if (!currentCommit.getBlob(fileName, _blobs).getContents().
-                            equals(Utils.readContentsAsString(file))
-                            && !area.isStaged(fileName)) {
-                        modFiles.add(fileName + " (modified)");
-                    }
+                } else if (!area.isStaged(fileName)
+                        && !holdsBlob(cache, file, fileName,
+                                currentCommit.getBlobHash(fileName))) {
+                    modFiles.add(fileName + " (modified)");
                 }
             }
         }
+        cache.saveStatCache(_gitletfolder);
         Collections.sort(modFiles);
         System.out.println("=== Modifications Not Staged For Commit ===");
         for (String fileName : modFiles) {
@@ -275,19 +392,43 @@ public class Repo implements Serializable {
         System.out.println();
     }
 
+    /** Checks if a working file holds the contents of a blob, asking the
+     *  stat cache first and recording the answer in it if it did not know.
+     *  @param cache stat cache of the working directory
+     *  @param file the file
+     *  @param fileName path of the file
+     *  @param hash id of the blob
+     *  @return true if file holds the contents of that blob
+     */
+    private boolean holdsBlob(StatCache cache, File file, String fileName,
+                              String hash) {
+        if (cache.matches(file, fileName, hash)) {
+            return true;
+        }
+        byte[] contents = Utils.readContents(file);
+        if (!readBlob(hash).getContents().equals(new String(contents,
+                StandardCharsets.UTF_8))) {
+            return false;
+        }
+        cache.record(fileName, file, contents, hash);
+        return true;
+    }
+
     /** Prints names of all untracked files. */
     public void listUntrackedFiles() {
         StagingArea area = StagingArea.fromFile(_gitletfolder);
         Commit currentCommit = getCurrentBranch().getHead();
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
         ArrayList<String> untrackedFiles = new ArrayList<String>();
-        for (File file : new File(".").listFiles()) {
-            if (!file.isDirectory() && (!currentCommit.isTrackingFile(file)
-                    && !area.isStagedForAddition(file.getName())
-                    || area.isStagedForRemoval(file.getName()))) {
-                untrackedFiles.add(file.getName());
+        for (String fileName : WorkingTree.walk(IgnoreRules.fromFile(
+                new File(".")))) {
+            if (SparseCheckout.includes(sparse, fileName)
+                    && (!currentCommit.isTrackingFile(new File(fileName))
+                    && !area.isStagedForAddition(fileName)
+                    || area.isStagedForRemoval(fileName))) {
+                untrackedFiles.add(fileName);
             }
         }
-        Collections.sort(untrackedFiles);
         System.out.println("=== Untracked Files ===");
         for (String fileName : untrackedFiles) {
             System.out.println(fileName);
@@ -295,6 +436,206 @@ public class Repo implements Serializable {
         System.out.println();
     }
 
+    /** Prints the line differences between two commits, or between a
+     *  commit and the working directory. Files whose blob hashes match are
+     *  skipped, and the remaining files are diffed in parallel. Files
+     *  outside the sparse checkout, if any, are taken as they are staged
+     *  or committed, since they are absent from the working directory.
+     *  @param from commit to diff from
+     *  @param to commit to diff to, or null for the working directory
+     */
+    public void diff(Commit from, Commit to) {
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
+        TreeMap<String, String> fromBlobs = blobsOf(from);
+        TreeMap<String, String> toBlobs;
+        if (to == null) {
+            toBlobs = workingBlobs(sparse);
+        } else {
+            toBlobs = blobsOf(to);
+        }
+        TreeSet<String> fileNames = new TreeSet<String>(fromBlobs.keySet());
+        fileNames.addAll(toBlobs.keySet());
+        ArrayList<String> changed = new ArrayList<String>();
+        for (String fileName : fileNames) {
+            if (!Objects.equals(fromBlobs.get(fileName),
+                    toBlobs.get(fileName))) {
+                changed.add(fileName);
+            }
+        }
+        ArrayList<String> needed = new ArrayList<String>();
+        for (String fileName : changed) {
+            needed.add(fromBlobs.get(fileName));
+            needed.add(toBlobs.get(fileName));
+        }
+        prefetchBlobs(needed);
+        List<String> diffs = changed.parallelStream().map(fileName -> {
+            String fromHash = fromBlobs.get(fileName);
+            String toHash = toBlobs.get(fileName);
+            String fromText = "", toText = "";
+            if (fromHash != null) {
+                fromText = readBlob(fromHash).getContents();
+            }
+            if (toHash != null && to == null
+                    && SparseCheckout.includes(sparse, fileName)) {
+                toText = Utils.readContentsAsString(new File(fileName));
+            } else if (toHash != null) {
+                toText = readBlob(toHash).getContents();
+            }
+            return Diff.unified(fromHash == null ? null : fileName,
+                    toHash == null ? null : fileName, fromText, toText);
+        }).collect(Collectors.toList());
+        for (String text : diffs) {
+            System.out.print(text);
+        }
+    }
+
+    /** Returns the mapping of file names to blob hashes of a commit.
+     *  @param commit commit whose files are returned
+     *  @return sorted mapping of file names to blob hashes
+     */
+    private TreeMap<String, String> blobsOf(Commit commit) {
+        TreeMap<String, String> blobs = new TreeMap<String, String>();
+        if (commit.hasBlobs()) {
+            for (String fileName : commit.getFileNames()) {
+                blobs.put(fileName, commit.getBlobHash(fileName));
+            }
+        }
+        return blobs;
+    }
+
+    /** Returns the blob hashes of the files in the working directory that
+     *  the head commit tracks or that are staged for addition, less those
+     *  staged for removal. Those outside the sparse checkout are taken as
+     *  staged, or as the head commit has them, and only the files that the
+     *  stat cache does not know are hashed.
+     *  @param sparse sparse checkout, or null if there is none
+     *  @return sorted mapping of file names to blob hashes
+     */
+    private TreeMap<String, String> workingBlobs(SparseCheckout sparse) {
+        StagingArea area = StagingArea.fromFile(_gitletfolder);
+        TreeSet<String> fileNames = new TreeSet<String>(
+                area.filesStagedForAddition());
+        Commit head = getCurrentBranch().getHead();
+        if (head.hasBlobs()) {
+            fileNames.addAll(head.getFileNames());
+        }
+        fileNames.removeAll(area.filesStagedForRemoval());
+        StatCache cache = StatCache.fromFile(_gitletfolder);
+        TreeMap<String, String> blobs = new TreeMap<String, String>();
+        for (String fileName : fileNames) {
+            File file = new File(fileName);
+            if (!SparseCheckout.includes(sparse, fileName)) {
+                blobs.put(fileName, area.isStagedForAddition(fileName)
+                        ? area.getFromAddition(fileName)
+                        : head.getBlobHash(fileName));
+            } else if (file.isFile()) {
+                String hash = cache.lookup(file, fileName);
+                if (hash == null) {
+                    byte[] contents = Utils.readContents(file);
+                    hash = Utils.hash(Utils.serialize(new Blob(fileName,
+                            new String(contents, StandardCharsets.UTF_8))));
+                    cache.record(fileName, file, contents, hash);
+                }
+                blobs.put(fileName, hash);
+            }
+        }
+        cache.saveStatCache(_gitletfolder);
+        return blobs;
+    }
+
+    /** Prints each line of a file in the head commit, annotated with the
+     *  commit that introduced it.
+     *  @param fileName name of file to be annotated
+     */
+    public void blame(String fileName) {
+        String head = getCurrentBranch().getHeadId();
+        Commit commit = readCommit(head);
+        if (!commit.isTrackingFile(new File(fileName))) {
+            throw Utils.error("File does not exist in that commit.");
+        }
+        LineOrigins origins = lineOrigins(head, fileName);
+        String[] lines = Diff.lines(readBlob(origins.getBlobHash()).
+                getContents());
+        HashMap<String, String> dates = new HashMap<String, String>();
+        String format = "%s (%s %" + String.valueOf(lines.length).length()
+                + "d) %s%n";
+        for (int i = 0; i < lines.length; i += 1) {
+            String origin = origins.getOrigin(i);
+            String date = dates.computeIfAbsent(origin,
+                id -> readCommit(id).getTimestamp());
+            System.out.printf(format, origin.substring(0, 8), date, i + 1,
+                    lines[i]);
+        }
+    }
+
+    /** Returns the origins of the lines of a file at a commit. Commits that
+     *  did not change the file are skipped using their path filters, only
+     *  commits that changed it are diffed, and the origins computed at each
+     *  of those are saved so that later calls stop at them.
+     *  @param id hash of a commit that tracks the file
+     *  @param fileName name of the file
+     *  @return origins of the lines of the file
+     */
+    public LineOrigins lineOrigins(String id, String fileName) {
+        ArrayList<String> changes = new ArrayList<String>();
+        LineOrigins origins = null;
+        String current = id;
+        while (current != null) {
+            current = introducingCommit(current, fileName);
+            origins = LineOrigins.fromFile(_origins, current, fileName);
+            if (origins != null) {
+                break;
+            }
+            changes.add(current);
+            String parent = getPathFilter(current).getParent();
+            if (parent == null || !hasCommit(parent)
+                    || !readCommit(parent).isTrackingFile(new File(fileName))) {
+                break;
+            }
+            current = parent;
+        }
+        String[] previousLines = null;
+        if (origins != null) {
+            previousLines = Diff.lines(readBlob(origins.getBlobHash()).
+                    getContents());
+        }
+        for (int i = changes.size() - 1; i >= 0; i -= 1) {
+            String change = changes.get(i);
+            String blobHash = readCommit(change).getBlobHash(fileName);
+            String[] lines = Diff.lines(readBlob(blobHash).getContents());
+            if (origins == null) {
+                origins = new LineOrigins(blobHash, lines.length, change);
+            } else {
+                origins = new LineOrigins(blobHash, origins, previousLines,
+                        lines, change);
+            }
+            origins.saveOrigins(_origins, change, fileName);
+            previousLines = lines;
+        }
+        return origins;
+    }
+
+    /** Returns the first-parent ancestor of a commit, or the commit itself,
+     *  that introduced the version of a file the commit tracks.
+     *  @param id hash of a commit that tracks the file
+     *  @param fileName name of the file
+     *  @return hash of the commit that introduced that version
+     */
+    private String introducingCommit(String id, String fileName) {
+        while (true) {
+            PathFilter filter = getPathFilter(id);
+            if (filter.getParent() == null || !hasCommit(filter.getParent())) {
+                return id;
+            }
+            if (filter.mightContain(fileName) && !readCommit(id).
+                    checkSameVersion(fileName, readCommit(
+                            filter.getParent()))) {
+                return id;
+            }
+            id = filter.getParent();
+        }
+    }
+
     /** Makes file in the working directory the same as the version in the
      *  head commit.
      *  @param fileName file to be checked out
@@ -327,10 +668,12 @@ public class Repo implements Serializable {
         if (branch.getName().equals(currentBranch.getName())
                 && branch.getDirectory().equals(currentBranch.
                 getDirectory())) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            throw Utils.error("No need to checkout the current branch.");
         }
         Commit commit = branch.getHead();
+        prefetchChangedBlobs(SparseCheckout.fromFile(_gitletfolder),
+                currentBranch.getHead(), commit);
+        int phase = Trace.beginPhase("working-files");
         removeExtraFiles(commit);
         if (!currentBranch.getName().equals(branch.getName())) {
             StagingArea area = StagingArea.fromFile(_gitletfolder);
@@ -338,6 +681,7 @@ public class Repo implements Serializable {
             area.saveStagingArea();
         }
         writeAllFromCommit(commit);
+        Trace.endPhase(phase);
         Utils.writeContents(_head, branchFile.getPath().substring(
                 branchFile.getPath().indexOf("refs/heads/")));
     }
@@ -357,8 +701,7 @@ public class Repo implements Serializable {
     public void removeBranch(String name) {
         Branch currentBranch = getCurrentBranch();
         if (currentBranch.getName().equals(name)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw Utils.error("Cannot remove the current branch.");
         }
         Utils.join(_heads, name).delete();
     }
@@ -369,8 +712,12 @@ public class Repo implements Serializable {
     public void resetToCommit(File commitFile) {
         Commit commit = Utils.readObject(commitFile, Commit.class);
         Branch currentBranch = getCurrentBranch();
+        prefetchChangedBlobs(SparseCheckout.fromFile(_gitletfolder),
+                currentBranch.getHead(), commit);
+        int phase = Trace.beginPhase("working-files");
         removeExtraFiles(commit);
         writeAllFromCommit(commit);
+        Trace.endPhase(phase);
         currentBranch.updateBranchHead(commit);
         StagingArea area = StagingArea.fromFile(_gitletfolder);
         area.clear();
@@ -378,49 +725,92 @@ public class Repo implements Serializable {
     }
 
     /** Merges given branch into current branch, if they can be merged, into
-     *  a new commit.
+     *  a new commit, detecting renames with the default similarity threshold.
      *  @param branchFile file of branch to be merged from
      */
     public void mergeBranch(File branchFile) {
+        mergeBranch(branchFile, RenameDetector.DEFAULT_THRESHOLD);
+    }
+
+    /** Merges given branch into current branch, if they can be merged, into
+     *  a new commit. Files renamed since the split point on either side are
+     *  merged under their new names.
+     *  @param branchFile file of branch to be merged from
+     *  @param renameThreshold minimum similarity, as a percentage, for a
+     *                         deleted and an added file to count as a rename
+     */
+    public void mergeBranch(File branchFile, int renameThreshold) {
         StagingArea area = StagingArea.fromFile(_gitletfolder);
         if (!area.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw Utils.error("You have uncommitted changes.");
         }
         Branch currentBranch = getCurrentBranch();
         Branch givenBranch = Utils.readObject(branchFile, Branch.class);
         if (givenBranch.getName().equals(currentBranch.getName())
                 && givenBranch.getDirectory().equals(currentBranch.
                         getDirectory())) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw Utils.error("Cannot merge a branch with itself.");
         }
+        int phase = Trace.beginPhase("split-point");
         Commit splitPoint = findSplitPoint(currentBranch, givenBranch);
+        Trace.endPhase(phase);
         if (splitPoint.equals(givenBranch.getHead())) {
-            System.out.println("Given branch is an ancestor of the current"
+            throw Utils.error("Given branch is an ancestor of the current"
                     + " branch.");
-            System.exit(0);
         } else if (splitPoint.equals(currentBranch.getHead())) {
             checkoutBranch(branchFile);
-            System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+            throw Utils.error("Current branch fast-forwarded.");
         }
         Commit givenCommit = givenBranch.getHead();
         Commit currentCommit = currentBranch.getHead();
+        prefetchChangedBlobs(null, splitPoint, currentCommit, givenCommit);
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
         if (givenCommit.hasBlobs()) {
             for (String fileName : givenCommit.getFileNames()) {
                 File file = new File(fileName);
-                if (file.exists() && !currentCommit.isTrackingFile(file)
-                        && !currentCommit.checkSameVersion(file.getName(),
+                if (SparseCheckout.includes(sparse, fileName)
+                        && file.exists() && !currentCommit.isTrackingFile(file)
+                        && !currentCommit.checkSameVersion(fileName,
                         givenCommit)) {
-                    System.out.println("There is an untracked file in "
+                    throw Utils.error("There is an untracked file in "
                             + "the way; delete it, or add and commit it "
                             + "first.");
-                    System.exit(0);
                 }
             }
         }
-        boolean conflict = mergeFiles(currentCommit, givenCommit, splitPoint);
+        RenameDetector detector = new RenameDetector(renameThreshold);
+        HashMap<String, String> currentRenames = detector.detect(splitPoint,
+                currentCommit, _blobs);
+        HashMap<String, String> givenRenames = detector.detect(splitPoint,
+                givenCommit, _blobs);
+        for (String oldName : currentRenames.keySet()) {
+            givenRenames.remove(oldName);
+        }
+        currentRenames.values().removeIf(newName ->
+                givenCommit.isTrackingFile(new File(newName)));
+        givenRenames.values().removeIf(newName ->
+                currentCommit.isTrackingFile(new File(newName)));
+        HashMap<String, String> renames = new HashMap<String, String>(
+                currentRenames);
+        renames.putAll(givenRenames);
+        Commit renamedCurrent = renamed(currentCommit, givenRenames);
+        boolean conflict = mergeFiles(renamedCurrent,
+                renamed(givenCommit, currentRenames),
+                renamed(splitPoint, renames));
+        area = StagingArea.fromFile(_gitletfolder);
+        for (String oldName : givenRenames.keySet()) {
+            String newName = givenRenames.get(oldName);
+            if (currentCommit.isTrackingFile(new File(oldName))) {
+                if (!area.isStaged(newName)) {
+                    writeFromCommit(renamedCurrent, new File(newName));
+                    area.stageForAddition(newName,
+                            renamedCurrent.getBlobHash(newName));
+                }
+                WorkingTree.delete(oldName);
+                area.stageForRemoval(oldName);
+            }
+        }
+        area.saveStagingArea();
         if (givenBranch.getDirectory().equals(currentBranch.getDirectory())) {
             createMergeCommit("Merged " + givenBranch.getName() + " into "
                     + currentBranch.getName() + ".", givenCommit);
@@ -434,58 +824,255 @@ public class Repo implements Serializable {
         }
     }
 
+    /** Returns an unsaved copy of commit in which the files named by the
+     *  keys of renames are moved to the corresponding values. Moved
+     *  contents are stored as blobs under their new names, so that a file
+     *  that was renamed without changes still compares as the same version.
+     *  @param commit commit to be copied
+     *  @param renames mapping of old file names to new file names
+     *  @return copy of commit with the renames applied
+     */
+    public Commit renamed(Commit commit, HashMap<String, String> renames) {
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        if (commit.hasBlobs()) {
+            for (String fileName : commit.getFileNames()) {
+                blobs.put(fileName, commit.getBlobHash(fileName));
+            }
+        }
+        for (String oldName : renames.keySet()) {
+            String hash = blobs.remove(oldName);
+            if (hash != null) {
+                Blob blob = new Blob(renames.get(oldName),
+                        readBlob(hash).getContents());
+                blob.saveBlob(_blobs);
+                blobs.put(renames.get(oldName), Utils.hash(Utils.serialize(
+                        blob)));
+            }
+        }
+        return new Commit(commit.getMessage(), null, blobs);
+    }
+
     /** Returns the splitpoint of the current branch and a given branch.
      *  @param cBranch current branch
      *  @param gBranch given branch
      *  @return split point of two branches
      */
     public Commit findSplitPoint(Branch cBranch, Branch gBranch) {
-        HashSet<String> givenParents = new HashSet<String>();
-        Commit givenParent = gBranch.getHead();
-        HashSet<Commit> prevParents = new HashSet<Commit>();
-        prevParents.add(givenParent);
-        givenParents.add(Utils.sha1(Utils.serialize(givenParent)));
-        while (!prevParents.isEmpty()) {
-            HashSet<Commit> nextParents = new HashSet<Commit>();
-            for (Commit child : prevParents) {
-                if (child.getParent() != null) {
-                    nextParents.add(Utils.readObject(Utils.join(_commits,
-                            child.getParent()), Commit.class));
-                    if (child.isMergeCommit()) {
-                        nextParents.add(Utils.readObject(Utils.join(_commits,
-                                child.getMergeParent()), Commit.class));
-                    }
+        IdSet givenParents = ancestors(gBranch.getHeadId());
+        IdSet visited = new IdSet();
+        ArrayList<String> ids = new ArrayList<String>();
+        ids.add(cBranch.getHeadId());
+        visited.add(cBranch.getHeadId());
+        while (!ids.isEmpty()) {
+            for (String id : ids) {
+                if (givenParents.contains(id)) {
+                    return readCommit(id);
                 }
             }
-            for (Commit parent : nextParents) {
-                givenParents.add(Utils.sha1(Utils.serialize(parent)));
+            ArrayList<String> parents = new ArrayList<String>();
+            for (String id : ids) {
+                addParents(parents, getHeader(id));
+            }
+            ids = new ArrayList<String>();
+            for (String id : parents) {
+                if (visited.add(id)) {
+                    ids.add(id);
+                }
             }
-            prevParents = nextParents;
         }
-        HashSet<Commit> parents = new HashSet<Commit>();
-        Commit currentParent = cBranch.getHead();
-        parents.add(currentParent);
-        while (true) {
-            HashSet<String> ids = new HashSet<String>();
-            for (Commit parent : parents) {
-                ids.add(Utils.sha1(Utils.serialize(parent)));
+        throw Utils.error("No common ancestor in the fetched history; "
+                + "fetch with --deepen first.");
+    }
+
+    /** Returns the hashes of a commit and all of its ancestors that are
+     *  present in this repository.
+     *  @param head hash of the commit
+     *  @return hashes of head and its ancestors
+     */
+    public IdSet ancestors(String head) {
+        IdSet ancestors = new IdSet();
+        ArrayList<String> frontier = new ArrayList<String>();
+        frontier.add(head);
+        while (!frontier.isEmpty()) {
+            ArrayList<String> next = new ArrayList<String>();
+            for (String id : frontier) {
+                if (ancestors.add(id)) {
+                    addParents(next, getHeader(id));
+                }
             }
-            for (String id : ids) {
-                if (givenParents.contains(id)) {
-                    return Utils.readObject(Utils.join(_commits, id),
-                            Commit.class);
+            frontier = next;
+        }
+        return ancestors;
+    }
+
+    /** Replays the commits of the current branch that the given branch does
+     *  not have onto the head of the given branch, making the current
+     *  branch's history linear. Each commit, following first parents, is
+     *  replayed in memory as the change it made to its parent's mapping of
+     *  file names to blobs, so only the new commits are written as it goes,
+     *  and the working directory is updated once at the end, for the files
+     *  that differ between the old and new heads. Commits whose changes are
+     *  already in the given branch are dropped.
+     *  @param branchFile file of the branch to rebase onto
+     */
+    public void rebase(File branchFile) {
+        StagingArea area = StagingArea.fromFile(_gitletfolder);
+        if (!area.isEmpty()) {
+            throw Utils.error("You have uncommitted changes.");
+        }
+        Branch currentBranch = getCurrentBranch();
+        Branch givenBranch = Utils.readObject(branchFile, Branch.class);
+        if (givenBranch.getName().equals(currentBranch.getName())
+                && givenBranch.getDirectory().equals(currentBranch.
+                        getDirectory())) {
+            throw Utils.error("Cannot rebase a branch onto itself.");
+        }
+        int phase = Trace.beginPhase("split-point");
+        IdSet given = ancestors(givenBranch.getHeadId());
+        ArrayList<String> replay = new ArrayList<String>();
+        for (String id = currentBranch.getHeadId(); !given.contains(id);
+             id = getHeader(id).getParent()) {
+            if (id == null || !hasCommit(id)) {
+                throw Utils.error("No common ancestor in the fetched "
+                        + "history; fetch with --deepen first.");
+            }
+            replay.add(id);
+        }
+        Trace.endPhase(phase);
+        Commit oldHead = currentBranch.getHead();
+        Commit newHead = givenBranch.getHead();
+        if (currentBranch.getHeadId().equals(givenBranch.getHeadId())) {
+            throw Utils.error("Current branch is up to date.");
+        } else if (replay.isEmpty()) {
+            updateWorkingFiles(oldHead, newHead);
+            currentBranch.updateBranchHead(newHead);
+            throw Utils.error("Current branch fast-forwarded.");
+        } else if (findSplitPoint(currentBranch, givenBranch).equals(
+                newHead)) {
+            throw Utils.error("Current branch is up to date.");
+        }
+        phase = Trace.beginPhase("replay");
+        Collections.reverse(replay);
+        String newHeadId = givenBranch.getHeadId();
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        if (newHead.hasBlobs()) {
+            for (String fileName : newHead.getFileNames()) {
+                blobs.put(fileName, newHead.getBlobHash(fileName));
+            }
+        }
+        Commit parent = readCommit(getHeader(replay.get(0)).getParent());
+        for (String id : replay) {
+            Commit commit = readCommit(id);
+            if (replayChanges(parent, commit, blobs, id)) {
+                Commit replayed = new Commit(commit.getMessage(),
+                        commit.getTimestamp(), newHeadId, null, blobs);
+                replayed.saveCommit(_commits);
+                newHeadId = indexCommit(replayed, newHead, newHeadId);
+                newHead = replayed;
+            }
+            parent = commit;
+        }
+        Trace.endPhase(phase);
+        updateWorkingFiles(oldHead, newHead);
+        currentBranch.updateBranchHead(newHead);
+    }
+
+    /** Applies the changes a commit made to its parent to a mapping of file
+     *  names to blob hashes.
+     *  @param parent first parent of commit
+     *  @param commit commit being replayed
+     *  @param blobs mapping of file names to blob hashes being replayed
+     *               onto, which is updated
+     *  @param id hash of commit, for messages
+     *  @return true if blobs changed
+     */
+    private boolean replayChanges(Commit parent, Commit commit,
+                                  HashMap<String, String> blobs, String id) {
+        TreeSet<String> fileNames = new TreeSet<String>();
+        if (parent.hasBlobs()) {
+            fileNames.addAll(parent.getFileNames());
+        }
+        if (commit.hasBlobs()) {
+            fileNames.addAll(commit.getFileNames());
+        }
+        boolean changed = false;
+        for (String fileName : fileNames) {
+            String before = parent.hasBlobs()
+                    ? parent.getBlobHash(fileName) : null;
+            String after = commit.hasBlobs()
+                    ? commit.getBlobHash(fileName) : null;
+            String current = blobs.get(fileName);
+            if (Objects.equals(before, after)
+                    || Objects.equals(current, after)) {
+                continue;
+            } else if (!Objects.equals(current, before)) {
+                throw Utils.error("Commit %s conflicts with the given "
+                        + "branch in %s; rebase aborted.",
+                        id.substring(0, 7), fileName);
+            } else if (after == null) {
+                blobs.remove(fileName);
+            } else {
+                blobs.put(fileName, after);
+            }
+            changed = true;
+        }
+        return changed;
+    }
+
+    /** Updates the working directory from one commit to another, writing
+     *  only the files whose versions differ and deleting the files that
+     *  only the first tracks, within the sparse checkout, if any.
+     *  @param from commit the working directory is at
+     *  @param to commit the working directory is moved to
+     */
+    private void updateWorkingFiles(Commit from, Commit to) {
+        int phase = Trace.beginPhase("working-files");
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
+        prefetchChangedBlobs(sparse, from, to);
+        ArrayList<String> changed = new ArrayList<String>();
+        if (to.hasBlobs()) {
+            for (String fileName : to.getFileNames()) {
+                if (!SparseCheckout.includes(sparse, fileName)
+                        || from.checkSameVersion(fileName, to)) {
+                    continue;
+                }
+                File file = new File(fileName);
+                if (file.exists() && !from.isTrackingFile(file)) {
+                    throw Utils.error("There is an untracked file in "
+                            + "the way; delete it, or add and commit it "
+                            + "first.");
                 }
+                changed.add(fileName);
             }
-            HashSet<Commit> newParents = new HashSet<Commit>();
-            for (Commit parent : parents) {
-                newParents.add(Utils.readObject(Utils.join(_commits,
-                        parent.getParent()), Commit.class));
-                if (parent.isMergeCommit()) {
-                    newParents.add(Utils.readObject(Utils.join(_commits,
-                            parent.getMergeParent()), Commit.class));
+        }
+        if (from.hasBlobs()) {
+            for (String fileName : from.getFileNames()) {
+                if (SparseCheckout.includes(sparse, fileName)
+                        && !to.isTrackingFile(new File(fileName))) {
+                    WorkingTree.delete(fileName);
                 }
             }
-            parents = newParents;
+        }
+        StatCache cache = StatCache.fromFile(_gitletfolder);
+        for (String fileName : changed) {
+            writeFromCommit(to, new File(fileName), cache);
+        }
+        cache.saveStatCache(_gitletfolder);
+        Trace.endPhase(phase);
+    }
+
+    /** Adds the hashes of the parents of a commit that are present in this
+     *  repository to ids. Parents missing behind a shallow boundary are
+     *  left out.
+     *  @param ids list to which hashes are added
+     *  @param header header of the commit
+     */
+    private void addParents(ArrayList<String> ids, CommitHeader header) {
+        if (header.getParent() != null && hasCommit(header.getParent())) {
+            ids.add(header.getParent());
+        }
+        if (header.isMergeCommit() && hasCommit(header.getMergeParent())) {
+            ids.add(header.getMergeParent());
         }
     }
 
@@ -517,60 +1104,42 @@ public class Repo implements Serializable {
     public boolean handleFilesInCurrent(Commit currentCommit,
                                                Commit givenCommit,
                                                Commit splitPoint) {
-        boolean conflict = false;
         StagingArea area = StagingArea.fromFile(_gitletfolder);
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
+        ArrayList<String> bothChanged = new ArrayList<String>();
         for (String fileName : currentCommit.getFileNames()) {
             File file = new File(fileName);
+            boolean included = SparseCheckout.includes(sparse, fileName);
             if (splitPoint.isTrackingFile(file)) {
                 if (splitPoint.checkSameVersion(fileName, currentCommit)
                         && !splitPoint.checkSameVersion(fileName,
                         givenCommit)) {
                     if (givenCommit.isTrackingFile(file)) {
-                        writeFromCommit(givenCommit, file);
+                        if (included) {
+                            writeFromCommit(givenCommit, file);
+                        }
                         area.stageForAddition(fileName, givenCommit.
                                 getBlobHash(fileName));
                     } else {
-                        Utils.restrictedDelete(file);
+                        if (included) {
+                            WorkingTree.delete(fileName);
+                        }
                         area.stageForRemoval(fileName);
                     }
                 } else if (!splitPoint.checkSameVersion(fileName,
                         currentCommit) && !splitPoint.checkSameVersion(
                         fileName, givenCommit) && !currentCommit.
                         checkSameVersion(fileName, givenCommit)) {
-                    conflict = true;
-                    String currContents = "";
-                    if (currentCommit.isTrackingFile(file)) {
-                        currContents = currentCommit.getBlob(fileName, _blobs).
-                                getContents();
-                    }
-                    String givenContents = "";
-                    if (givenCommit.isTrackingFile(file)) {
-                        givenContents = givenCommit.getBlob(fileName, _blobs).
-                                getContents();
-                    }
-                    Utils.writeContents(file, "<<<<<<< HEAD\n" + currContents
-                            + "=======\n" + givenContents + ">>>>>>>\n");
-                    Blob blob = new Blob(file);
-                    blob.saveBlob(_blobs);
-                    area.stageForAddition(fileName, Utils.sha1(Utils.serialize(
-                            blob)));
+                    bothChanged.add(fileName);
                 }
             } else if (givenCommit.isTrackingFile(file)
                     && !currentCommit.checkSameVersion(fileName,
                     givenCommit)) {
-                conflict = true;
-                String currContents = currentCommit.getBlob(fileName, _blobs).
-                        getContents();
-                String givenContents = givenCommit.getBlob(fileName, _blobs).
-                        getContents();
-                Utils.writeContents(file, "<<<<<<< HEAD\n" + currContents
-                        + "=======\n" + givenContents + ">>>>>>>\n");
-                Blob blob = new Blob(file);
-                blob.saveBlob(_blobs);
-                area.stageForAddition(fileName, Utils.sha1(
-                        Utils.serialize(blob)));
+                bothChanged.add(fileName);
             }
         }
+        boolean conflict = mergeContents(bothChanged, currentCommit,
+                givenCommit, splitPoint, area);
         area.saveStagingArea();
         return conflict;
     }
@@ -584,35 +1153,86 @@ public class Repo implements Serializable {
     public boolean handleFilesInGiven(Commit currentCommit,
                                              Commit givenCommit,
                                              Commit splitPoint) {
-        boolean conflict = false;
         StagingArea area = StagingArea.fromFile(_gitletfolder);
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
+        ArrayList<String> bothChanged = new ArrayList<String>();
         for (String fileName : givenCommit.getFileNames()) {
             File file = new File(fileName);
             if (splitPoint.isTrackingFile(file)) {
                 if (!currentCommit.isTrackingFile(file)
                         && !givenCommit.checkSameVersion(
                         fileName, splitPoint)) {
-                    conflict = true;
-                    Utils.writeContents(file, "<<<<<<< HEAD\n" + "=======\n"
-                            + givenCommit.getBlob(fileName, _blobs).
-                            getContents() + ">>>>>>>\n");
-                    Blob blob = new Blob(file);
-                    blob.saveBlob(_blobs);
-                    area.stageForAddition(fileName, Utils.sha1(
-                            Utils.serialize(blob)));
+                    bothChanged.add(fileName);
                 }
             } else {
                 if (!currentCommit.isTrackingFile(file)) {
-                    writeFromCommit(givenCommit, file);
+                    if (SparseCheckout.includes(sparse, fileName)) {
+                        writeFromCommit(givenCommit, file);
+                    }
                     area.stageForAddition(fileName, givenCommit.getBlobHash(
                             fileName));
                 }
             }
         }
+        boolean conflict = mergeContents(bothChanged, currentCommit,
+                givenCommit, splitPoint, area);
         area.saveStagingArea();
         return conflict;
     }
 
+    /** Merges, line by line, the files that were changed differently in
+     *  the current and given commits, writes the results to the working
+     *  directory and stages them. The merges are computed in parallel.
+     *  Results outside the sparse checkout, if any, are staged without
+     *  being written, unless they conflict: those are written so that the
+     *  conflict can be resolved, as git does.
+     *  @param fileNames names of files changed in both commits
+     *  @param currentCommit current commit
+     *  @param givenCommit given commit
+     *  @param splitPoint split point between branches
+     *  @param area staging area in which to stage the results
+     *  @return true if any file has a merge conflict
+     */
+    public boolean mergeContents(ArrayList<String> fileNames,
+                                 Commit currentCommit, Commit givenCommit,
+                                 Commit splitPoint, StagingArea area) {
+        List<LineMerge> merges = fileNames.parallelStream().map(fileName ->
+                new LineMerge(contentsOf(splitPoint, fileName),
+                        contentsOf(currentCommit, fileName),
+                        contentsOf(givenCommit, fileName))).
+                collect(Collectors.toList());
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
+        boolean conflict = false;
+        for (int i = 0; i < fileNames.size(); i += 1) {
+            String fileName = fileNames.get(i);
+            LineMerge merge = merges.get(i);
+            conflict |= merge.hasConflict();
+            if (merge.hasConflict()
+                    || SparseCheckout.includes(sparse, fileName)) {
+                File file = new File(fileName);
+                WorkingTree.makeParents(file);
+                Utils.writeContents(file, merge.getResult());
+            }
+            Blob blob = new Blob(fileName, merge.getResult());
+            blob.saveBlob(_blobs);
+            area.stageForAddition(fileNames.get(i), Utils.hash(
+                    Utils.serialize(blob)));
+        }
+        return conflict;
+    }
+
+    /** Returns the contents of a file in a commit.
+     *  @param commit commit to be read from
+     *  @param fileName file name
+     *  @return contents of the file, or null if commit does not track it
+     */
+    private String contentsOf(Commit commit, String fileName) {
+        if (commit.isTrackingFile(new File(fileName))) {
+            return commit.getBlob(fileName, _blobs).getContents();
+        }
+        return null;
+    }
+
     /** Creates a commit based on staging area.
      *  @param message message of commit
      *  @param mergeParent commit's second parent from merging
@@ -634,11 +1254,85 @@ public class Repo implements Serializable {
         }
         Commit newCommit = new Commit(message, parent, mergeParent, blobs);
         newCommit.saveCommit(_commits);
+        indexCommit(newCommit, parent, currentBranch.getHeadId());
         currentBranch.updateBranchHead(newCommit);
         area.clear();
         area.saveStagingArea();
     }
 
+    /** Reads the commit with the given hash.
+     *  @param id commit hash
+     *  @return commit with that hash
+     */
+    public Commit readCommit(String id) {
+        return Utils.readObject(Utils.join(_commits, id), Commit.class);
+    }
+
+    /** Reads the blob with the given hash.
+     *  @param id blob hash
+     *  @return blob with that hash
+     */
+    public Blob readBlob(String id) {
+        File blobFile = Utils.join(_blobs, id);
+        if (!blobFile.exists()) {
+            prefetchBlobs(Collections.singleton(id));
+        }
+        return Utils.readObject(blobFile, Blob.class);
+    }
+
+    /** Writes the path filter and header of a newly saved commit.
+     *  @param commit new commit
+     *  @param parent first parent of commit, or null for a root commit
+     *  @param parentHash hash of parent, or null for a root commit
+     *  @return hash of commit
+     */
+    public String indexCommit(Commit commit, Commit parent,
+                              String parentHash) {
+        String id = Utils.hash(Utils.serialize(commit));
+        PathFilter.fromCommits(commit, parent, parentHash).saveFilter(
+                _filters, id);
+        new CommitHeader(commit).saveHeader(_headers, id);
+        Maintenance.indexed(_commits);
+        return id;
+    }
+
+    /** Returns the header of the commit with the given hash, building and
+     *  saving it first if the commit does not have one yet.
+     *  @param id commit hash
+     *  @return header of that commit
+     */
+    public CommitHeader getHeader(String id) {
+        File headerFile = Utils.join(_headers, id);
+        if (headerFile.exists()) {
+            return Utils.readObject(headerFile, CommitHeader.class);
+        }
+        CommitHeader header = new CommitHeader(readCommit(id));
+        header.saveHeader(_headers, id);
+        return header;
+    }
+
+    /** Returns the path filter of the commit with the given hash, building
+     *  and saving it first if the commit does not have one yet, as happens
+     *  for commits copied from a remote.
+     *  @param id commit hash
+     *  @return path filter of that commit
+     */
+    public PathFilter getPathFilter(String id) {
+        File filterFile = Utils.join(_filters, id);
+        if (filterFile.exists()) {
+            return Utils.readObject(filterFile, PathFilter.class);
+        }
+        Commit commit = readCommit(id);
+        Commit parent = null;
+        if (commit.getParent() != null && hasCommit(commit.getParent())) {
+            parent = readCommit(commit.getParent());
+        }
+        PathFilter filter = PathFilter.fromCommits(commit, parent,
+                commit.getParent());
+        filter.saveFilter(_filters, id);
+        return filter;
+    }
+
     /** Retrieve the current branch from its file.
      *  @return current branch
      */
@@ -654,30 +1348,52 @@ public class Repo implements Serializable {
      *  @param file file to be written over
      */
     public void writeFromCommit(Commit commit, File file) {
+        StatCache cache = StatCache.fromFile(_gitletfolder);
+        writeFromCommit(commit, file, cache);
+        cache.saveStatCache(_gitletfolder);
+    }
+
+    /** Overwrites a previous file from a given commit, and creates a new file
+     *  if file does not exist, recording it in a stat cache.
+     *  @param commit commit to be written from
+     *  @param file file to be written over
+     *  @param cache stat cache of the working directory
+     */
+    private void writeFromCommit(Commit commit, File file, StatCache cache) {
         if (!commit.isTrackingFile(file)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw Utils.error("File does not exist in that commit.");
         }
         if (!file.exists()) {
+            WorkingTree.makeParents(file);
             try {
                 file.createNewFile();
             } catch (IOException io) {
-                System.exit(0);
+                throw new GitletException();
             }
         }
-        Utils.writeContents(file, commit.getBlob(file.getName(), _blobs).
-                getContents());
+        String fileName = WorkingTree.path(file);
+        byte[] contents = commit.getBlob(fileName, _blobs).getContents().
+                getBytes(StandardCharsets.UTF_8);
+        Utils.writeContents(file, contents);
+        cache.record(fileName, file, contents,
+                commit.getBlobHash(fileName));
     }
 
-    /** Writes all the files from the previous commit.
+    /** Writes all the files from the previous commit that the sparse
+     *  checkout, if any, includes.
      *  @param commit commit to be written from.
      */
     public void writeAllFromCommit(Commit commit) {
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
+        StatCache cache = StatCache.fromFile(_gitletfolder);
         if (commit.hasBlobs()) {
             for (String fileName : commit.getFileNames()) {
-                writeFromCommit(commit, new File(fileName));
+                if (SparseCheckout.includes(sparse, fileName)) {
+                    writeFromCommit(commit, new File(fileName), cache);
+                }
             }
         }
+        cache.saveStatCache(_gitletfolder);
     }
 
     /** Removes the files that are tracked by the current commit, but not by
@@ -686,26 +1402,72 @@ public class Repo implements Serializable {
      */
     public void removeExtraFiles(Commit commit) {
         Branch currentBranch = getCurrentBranch();
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
         if (commit.hasBlobs()) {
             for (String fileName : commit.getFileNames()) {
                 File file = new File(fileName);
-                if (file.exists() && !currentBranch.
+                if (SparseCheckout.includes(sparse, fileName)
+                        && file.exists() && !currentBranch.
                         getHead().isTrackingFile(file)
                         && !currentBranch.getHead().checkSameVersion(
-                                file.getName(), commit)) {
-                    System.out.println("There is an untracked file in "
+                                fileName, commit)) {
+                    throw Utils.error("There is an untracked file in "
                             + "the way; delete it, or add and commit it "
                             + "first.");
-                    System.exit(0);
                 }
             }
         }
         if (currentBranch.getHead().hasBlobs()) {
             for (String fileName : currentBranch.getHead().
                     getFileNames()) {
-                if (!commit.isTrackingFile(new File(fileName))) {
-                    Utils.restrictedDelete(fileName);
+                if (SparseCheckout.includes(sparse, fileName)
+                        && !commit.isTrackingFile(new File(fileName))) {
+                    WorkingTree.delete(fileName);
+                }
+            }
+        }
+    }
+
+    /** Restricts the working directory to the files matching patterns,
+     *  writing the newly included files of the head commit and deleting
+     *  the newly excluded ones that have no unstaged or staged changes.
+     *  @param patterns glob patterns of the included paths, or null to
+     *                  disable sparse checkout
+     */
+    public void setSparseCheckout(ArrayList<String> patterns) {
+        SparseCheckout sparse = null;
+        if (patterns == null) {
+            SparseCheckout.disable(_gitletfolder);
+        } else {
+            sparse = new SparseCheckout(patterns);
+            sparse.saveSparseCheckout(_gitletfolder);
+        }
+        Commit head = getCurrentBranch().getHead();
+        if (!head.hasBlobs()) {
+            return;
+        }
+        StagingArea area = StagingArea.fromFile(_gitletfolder);
+        for (String fileName : head.getFileNames()) {
+            File file = new File(fileName);
+            if (area.isStaged(fileName)) {
+                continue;
+            } else if (SparseCheckout.includes(sparse, fileName)) {
+                if (!file.exists()) {
+                    writeFromCommit(head, file);
                 }
+            } else if (file.exists() && head.getBlob(fileName, _blobs).
+                    getContents().equals(Utils.readContentsAsString(file))) {
+                WorkingTree.delete(fileName);
+            }
+        }
+    }
+
+    /** Prints the sparse checkout patterns, one per line. */
+    public void listSparseCheckout() {
+        SparseCheckout sparse = SparseCheckout.fromFile(_gitletfolder);
+        if (sparse != null) {
+            for (String pattern : sparse.getPatterns()) {
+                System.out.println(pattern);
             }
         }
     }
@@ -715,7 +1477,15 @@ public class Repo implements Serializable {
      * @param folder folder in which remote exists
      */
     public void createRemote(String name, File folder) {
-        _remotes.put(name, folder.getPath());
+        createRemote(name, folder.getPath());
+    }
+
+    /** Creates a new remote.
+     * @param name remote name
+     * @param location folder in which remote exists, or URL of a Server
+     */
+    public void createRemote(String name, String location) {
+        _remotes.put(name, location);
         saveRepo();
     }
 
@@ -723,8 +1493,11 @@ public class Repo implements Serializable {
      *  @param name remote name
      */
     public void removeRemote(String name) {
-        deleteAllFiles(new File(_remotes.get(name)));
+        if (!Transport.isUrl(_remotes.get(name))) {
+            deleteAllFiles(new File(_remotes.get(name)));
+        }
         _remotes.remove(name);
+        _promisors.remove(name);
         saveRepo();
     }
 
@@ -734,7 +1507,7 @@ public class Repo implements Serializable {
     public void deleteAllFiles(File dir) {
         if (dir.exists()) {
             if (dir.isDirectory()) {
-                for (File f : dir.listFiles()) {
+                for (File f : Utils.listFiles(dir)) {
                     deleteAllFiles(f);
                 }
             }
@@ -748,11 +1521,15 @@ public class Repo implements Serializable {
      *  @param branchName branch name
      */
     public void pushToRemoteBranch(String name, String branchName) {
+        if (Transport.isUrl(_remotes.get(name))) {
+            pushOverTransport(name, branchName);
+            return;
+        }
         File remoteFile = new File(_remotes.get(name));
         if (!remoteFile.exists()) {
-            System.out.println("Remote directory not found.");
-            System.exit(0);
+            throw Utils.error("Remote directory not found.");
         }
+        checkObjectFormat(remoteFile);
         Repo remote = Repo.fromFile(remoteFile);
         File remoteBranchFile = Utils.join(remote._heads, branchName);
         Commit currentCommit = getCurrentBranch().getHead();
@@ -762,8 +1539,8 @@ public class Repo implements Serializable {
             if (headInHistory(remoteBranch)) {
                 Commit remoteHead = remoteBranch.getHead();
                 remoteBranch.updateBranchHead(currentCommit);
-                while (!Utils.sha1(Utils.serialize(remoteHead)).equals(
-                        Utils.sha1(Utils.serialize(currentCommit)))) {
+                while (!Utils.hash(Utils.serialize(remoteHead)).equals(
+                        Utils.hash(Utils.serialize(currentCommit)))) {
                     currentCommit.saveCommit(remote._commits);
                     for (String fileName : currentCommit.getFileNames()) {
                         currentCommit.getBlob(fileName, _blobs).saveBlob(
@@ -773,15 +1550,14 @@ public class Repo implements Serializable {
                             currentCommit.getParent()), Commit.class);
                 }
             } else {
-                System.out.println("Please pull down remote changes before "
+                throw Utils.error("Please pull down remote changes before "
                         + "pushing.");
-                System.exit(0);
             }
         } else {
             try {
                 remoteBranchFile.createNewFile();
             } catch (IOException io) {
-                System.exit(0);
+                throw new GitletException();
             }
             new Branch(branchName, currentCommit, remote._commits,
                     remote._heads).saveBranch();
@@ -791,7 +1567,8 @@ public class Repo implements Serializable {
                     currentCommit.getBlob(fileName, _blobs).saveBlob(
                             remote._blobs);
                 }
-                while (currentCommit.getParent() != null) {
+                while (currentCommit.getParent() != null
+                        && hasCommit(currentCommit.getParent())) {
                     currentCommit = Utils.readObject(Utils.join(_commits,
                             currentCommit.getParent()), Commit.class);
                     currentCommit.saveCommit(remote._commits);
@@ -804,23 +1581,31 @@ public class Repo implements Serializable {
         }
     }
 
+    /** Checks that a remote names objects as this repository does, since
+     *  objects copied between them would otherwise be misnamed.
+     *  @param remoteFile .gitlet folder of the remote
+     */
+    private void checkObjectFormat(File remoteFile) {
+        if (!ObjectFormat.of(remoteFile).equals(
+                ObjectFormat.of(_gitletfolder))) {
+            throw Utils.error("Remote uses a different object format.");
+        }
+    }
+
     /** Checks if the given branch's head is in history of the current branch.
      *  @param remoteBranch branch in remote repository
      *  @return true if the head is in this repository's current branch history
      */
     public boolean headInHistory(Branch remoteBranch) {
-        Commit currentCommit = getCurrentBranch().getHead();
-        Commit remoteHead = remoteBranch.getHead();
-        while (currentCommit.getParent() != null) {
-            if (Utils.sha1(Utils.serialize(remoteHead)).equals(Utils.sha1(
-                    Utils.serialize(currentCommit)))) {
+        String remoteHead = remoteBranch.getHeadId();
+        String id = getCurrentBranch().getHeadId();
+        while (id != null && hasCommit(id)) {
+            if (id.equals(remoteHead)) {
                 return true;
             }
-            currentCommit = Utils.readObject(Utils.join(_commits,
-                    currentCommit.getParent()), Commit.class);
+            id = getHeader(id).getParent();
         }
-        return Utils.sha1(Utils.serialize(remoteHead)).equals(Utils.sha1(
-                Utils.serialize(currentCommit)));
+        return false;
     }
 
     /** Copies commits from the remote repository into the local repository.
@@ -828,90 +1613,526 @@ public class Repo implements Serializable {
      *  @param branchName branch name
      */
     public void fetchFromRemoteBranch(String name, String branchName) {
+        fetchFromRemoteBranch(name, branchName, -1, 0, false);
+    }
+
+    /** Copies commits from the remote repository into the local repository,
+     *  optionally truncating history. Commits whose parents were not copied
+     *  are recorded in the shallow file.
+     *  @param name remote name
+     *  @param branchName branch name
+     *  @param depth number of generations of history to copy from the
+     *               remote branch head, or -1 to copy all of it
+     *  @param deepen number of further generations to copy behind every
+     *                existing shallow boundary
+     *  @param lazyBlobs true to copy only commits, and make the remote a
+     *                   promisor from which missing blobs are fetched
+     *                   when they are first needed
+     */
+    public void fetchFromRemoteBranch(String name, String branchName,
+                                      int depth, int deepen,
+                                      boolean lazyBlobs) {
+        if (Transport.isUrl(_remotes.get(name))) {
+            if (depth >= 0 || deepen > 0 || lazyBlobs) {
+                throw Utils.error("That remote does not support this "
+                        + "option.");
+            }
+            fetchOverTransport(name, branchName);
+            return;
+        }
         File remoteFile = new File(_remotes.get(name));
         if (!remoteFile.exists()) {
-            System.out.println("Remote directory not found.");
-            System.exit(0);
+            throw Utils.error("Remote directory not found.");
         }
+        checkObjectFormat(remoteFile);
         Repo remote = Repo.fromFile(remoteFile);
         File remoteBranchFile = Utils.join(remote._heads, branchName);
-        if (remoteBranchFile.exists()) {
-            Branch remoteBranch = Utils.readObject(remoteBranchFile,
-                    Branch.class);
+        if (!remoteBranchFile.exists()) {
+            throw Utils.error("That remote does not have that branch.");
+        }
+        Branch remoteBranch = Utils.readObject(remoteBranchFile,
+                Branch.class);
+        File remoteHeads = Utils.join(_heads, name);
+        if (!remoteHeads.exists()) {
+            remoteHeads.mkdir();
+        }
+        Set<String> shallow = getShallow();
+        ArrayList<String> heads = new ArrayList<String>();
+        heads.add(remoteBranch.getHeadId());
+        if (lazyBlobs && _promisors.add(name)) {
+            saveRepo();
+        }
+        lazyBlobs = _promisors.contains(name);
+        int phase = Trace.beginPhase("copy-history");
+        copyHistory(remote, heads, depth, shallow, !lazyBlobs);
+        if (deepen > 0) {
+            copyHistory(remote, new ArrayList<String>(shallow), deepen + 1,
+                    shallow, !lazyBlobs);
+        }
+        Trace.endPhase(phase);
+        saveShallow(shallow);
+        new Branch(branchName, readCommit(remoteBranch.getHeadId()),
+                _commits, remoteHeads).saveBranch();
+    }
+
+    /** Copies every branch of a remote into the local repository, walking
+     *  the histories of the branches concurrently. Commits and blobs shared
+     *  by several branches are copied once. The threads copy only blobs;
+     *  the commits are written once all of them are done, parents first,
+     *  so that a failed fetch leaves no commit without its blobs or
+     *  parents, and the remote-tracking branches after that, so that it
+     *  moves none of them.
+     *  @param name remote name
+     *  @param lazyBlobs true to copy only commits, and make the remote a
+     *                   promisor from which missing blobs are fetched
+     *                   when they are first needed
+     */
+    public void fetchAllFromRemote(String name, boolean lazyBlobs) {
+        if (Transport.isUrl(_remotes.get(name))) {
+            if (lazyBlobs) {
+                throw Utils.error("That remote does not support this "
+                        + "option.");
+            }
+            fetchOverTransport(name, null);
+            return;
+        }
+        File remoteFile = new File(_remotes.get(name));
+        if (!remoteFile.exists()) {
+            throw Utils.error("Remote directory not found.");
+        }
+        checkObjectFormat(remoteFile);
+        Repo remote = Repo.fromFile(remoteFile);
+        TreeMap<String, String> heads = new TreeMap<String, String>();
+        for (String branchName : Utils.plainFilenamesIn(remote._heads)) {
+            heads.put(branchName, Utils.readObject(Utils.join(remote._heads,
+                    branchName), Branch.class).getHeadId());
+        }
+        if (lazyBlobs && _promisors.add(name)) {
+            saveRepo();
+        }
+        boolean withBlobs = !_promisors.contains(name);
+        Set<String> shallow = ConcurrentHashMap.newKeySet();
+        shallow.addAll(getShallow());
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        Set<String> copiedBlobs = ConcurrentHashMap.newKeySet();
+        ConcurrentHashMap<String, Commit> copied =
+            new ConcurrentHashMap<String, Commit>();
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (String head : new TreeSet<String>(heads.values())) {
+            tasks.add(() -> {
+                copyReachable(remote, head, seen, copiedBlobs, copied,
+                        shallow, withBlobs);
+                return null;
+            });
+        }
+        ExecutorService fetchers = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(tasks.size(), FETCHERS)));
+        int phase = Trace.beginPhase("copy-history");
+        try {
+            for (Future<Void> task : fetchers.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (InterruptedException excp) {
+            throw new GitletException();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new GitletException();
+        } finally {
+            fetchers.shutdownNow();
+            Trace.endPhase(phase);
+        }
+        copyCommits(remote, copied);
+        saveShallow(shallow);
+        File remoteHeads = Utils.join(_heads, name);
+        if (!remoteHeads.exists()) {
+            remoteHeads.mkdir();
+        }
+        for (String branchName : heads.keySet()) {
+            new Branch(branchName, readCommit(heads.get(branchName)),
+                    _commits, remoteHeads).saveBranch();
+        }
+    }
+
+    /** Copies branches of a remote served by a Server into the local
+     *  repository, leaving out the history of every local branch, as long
+     *  as no history here is shallow.
+     *  @param name remote name
+     *  @param branchName name of the branch, or null for every branch
+     */
+    private void fetchOverTransport(String name, String branchName) {
+        try (Transport transport = Transport.connect(_remotes.get(name))) {
+            TreeMap<String, String> heads = transport.refs();
+            if (branchName != null) {
+                if (!heads.containsKey(branchName)) {
+                    throw Utils.error("That remote does not have that "
+                            + "branch.");
+                }
+                heads = new TreeMap<String, String>(heads.subMap(
+                        branchName, true, branchName, true));
+            }
+            HashSet<String> haves = new HashSet<String>();
+            if (getShallow().isEmpty()) {
+                addBranchHeads(_heads, haves);
+            }
+            int phase = Trace.beginPhase("copy-history");
+            try {
+                transport.fetch(this, new TreeSet<String>(heads.values()),
+                        haves);
+            } finally {
+                Trace.endPhase(phase);
+            }
             File remoteHeads = Utils.join(_heads, name);
-            File branchFile = Utils.join(remoteHeads, branchName);
-            Commit currentBranchCommit = remoteBranch.getHead();
-            if (!branchFile.exists()) {
-                createFromRemoteBranch(remote, branchName, remoteHeads,
-                        currentBranchCommit);
+            if (!remoteHeads.exists()) {
+                remoteHeads.mkdir();
+            }
+            for (String branch : heads.keySet()) {
+                new Branch(branch, readCommit(heads.get(branch)), _commits,
+                        remoteHeads).saveBranch();
+            }
+        }
+    }
+
+    /** Sends the current branch to a branch of a remote served by a
+     *  Server, with the commits the remote lacks.
+     *  @param name remote name
+     *  @param branchName name of the remote branch
+     */
+    private void pushOverTransport(String name, String branchName) {
+        try (Transport transport = Transport.connect(_remotes.get(name))) {
+            String remoteHead = transport.refs().get(branchName);
+            String head = getCurrentBranch().getHeadId();
+            IdSet ours = ancestors(head);
+            IdSet theirs = new IdSet();
+            if (remoteHead != null) {
+                if (!ours.contains(remoteHead)) {
+                    throw Utils.error("Please pull down remote changes "
+                            + "before pushing.");
+                }
+                theirs = ancestors(remoteHead);
+            }
+            ArrayList<String> commits = new ArrayList<String>();
+            for (String id : ours) {
+                if (!theirs.contains(id)) {
+                    commits.add(id);
+                }
+            }
+            transport.push(this, branchName, remoteHead, head, commits);
+        }
+    }
+
+    /** Adds the heads of the branches under a directory of heads, and of
+     *  the remote branches in its subdirectories, to ids.
+     *  @param dir directory of heads
+     *  @param ids set of commit hashes
+     */
+    public void addBranchHeads(File dir, Set<String> ids) {
+        for (File file : Utils.listFiles(dir)) {
+            if (file.isDirectory()) {
+                addBranchHeads(file, ids);
             } else {
-                updateFromRemoteBranch(remote, branchFile, currentBranchCommit);
+                ids.add(Utils.readObject(file, Branch.class).getHeadId());
             }
-        } else {
-            System.out.println("That remote does not have that branch.");
-            System.exit(0);
         }
     }
 
-    /** Creates a new branch from a given remote branch.
+    /** Copies the blobs of a commit from remote and of all its ancestors,
+     *  skipping the commits already present here with full history, and
+     *  collects the commits missing here, to be written by copyCommits.
+     *  Safe to call from several threads sharing seen and copiedBlobs,
+     *  which make sure each object is copied by only one of them.
      *  @param remote remote repository
-     *  @param branchName name of branch from remote
-     *  @param remoteHeads directory that contains branches from remote
-     *  @param currentBranchCommit remote branch head
+     *  @param start hash of the commit
+     *  @param seen hashes of the commits already visited by any thread
+     *  @param copiedBlobs hashes of the blobs already copied by any thread
+     *  @param copied commits to be written, by hash, to which those
+     *                missing here are added
+     *  @param shallow hashes of the shallow boundary commits, from which
+     *                 every commit whose parents are walked is removed
+     *  @param withBlobs true to copy the blobs of the copied commits
      */
-    public void createFromRemoteBranch(Repo remote, String branchName,
-                                       File remoteHeads,
-                                       Commit currentBranchCommit) {
-        if (!remoteHeads.exists()) {
-            remoteHeads.mkdir();
+    private void copyReachable(Repo remote, String start, Set<String> seen,
+                               Set<String> copiedBlobs,
+                               Map<String, Commit> copied,
+                               Set<String> shallow, boolean withBlobs) {
+        ArrayDeque<String> stack = new ArrayDeque<String>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!seen.add(id)) {
+                continue;
+            } else if (hasCommit(id) && !shallow.contains(id)) {
+                Maintenance.reused(Utils.join(_commits, id));
+                continue;
+            }
+            Commit commit;
+            if (hasCommit(id)) {
+                commit = readCommit(id);
+            } else if (remote.hasCommit(id)) {
+                commit = remote.readCommit(id);
+                if (withBlobs) {
+                    copyBlobs(remote, commit, copiedBlobs);
+                }
+                copied.put(id, commit);
+            } else {
+                continue;
+            }
+            shallow.remove(id);
+            if (commit.getParent() != null) {
+                stack.push(commit.getParent());
+            }
+            if (commit.isMergeCommit()) {
+                stack.push(commit.getMergeParent());
+            }
         }
-        new Branch(branchName, currentBranchCommit,
-                _commits, remoteHeads).saveBranch();
-        currentBranchCommit.saveCommit(_commits);
-        if (currentBranchCommit.hasBlobs()) {
-            for (String fileName : currentBranchCommit.
-                    getFileNames()) {
-                currentBranchCommit.getBlob(fileName, remote._blobs).
-                        saveBlob(_blobs);
+    }
+
+    /** Copies the given commits from remote and their ancestors, with
+     *  their blobs, generation by generation. The walk stops at commits
+     *  already present here with full history.
+     *  @param remote remote repository
+     *  @param starts hashes of the commits to start from
+     *  @param depth number of generations to copy, or -1 for all
+     *  @param shallow hashes of the shallow boundary commits, updated to
+     *                 reflect the copied history
+     *  @param withBlobs true to copy the blobs of the copied commits
+     */
+    public void copyHistory(Repo remote, ArrayList<String> starts, int depth,
+                            Set<String> shallow, boolean withBlobs) {
+        IdSet seen = new IdSet();
+        ArrayList<String> frontier = starts;
+        for (int generation = 1; !frontier.isEmpty(); generation += 1) {
+            ArrayList<String> next = new ArrayList<String>();
+            for (String id : frontier) {
+                if (!seen.add(id)) {
+                    continue;
+                }
+                if (hasCommit(id) && !shallow.contains(id)) {
+                    Maintenance.reused(Utils.join(_commits, id));
+                    continue;
+                }
+                if (!hasCommit(id)) {
+                    if (!remote.hasCommit(id)) {
+                        continue;
+                    }
+                    copyCommit(remote, id, withBlobs);
+                }
+                Commit commit = readCommit(id);
+                ArrayList<String> parents = new ArrayList<String>();
+                if (commit.getParent() != null) {
+                    parents.add(commit.getParent());
+                }
+                if (commit.isMergeCommit()) {
+                    parents.add(commit.getMergeParent());
+                }
+                if (generation == depth) {
+                    for (String parent : parents) {
+                        if (!hasCommit(parent) || shallow.contains(parent)) {
+                            shallow.add(id);
+                        }
+                    }
+                } else {
+                    shallow.remove(id);
+                    next.addAll(parents);
+                }
+            }
+            frontier = next;
+        }
+    }
+
+    /** Copies a commit and the blobs it tracks from remote, byte for byte.
+     *  @param remote remote repository
+     *  @param id hash of the commit
+     *  @param withBlobs true to copy the blobs too
+     */
+    public void copyCommit(Repo remote, String id, boolean withBlobs) {
+        if (withBlobs) {
+            copyBlobs(remote, remote.readCommit(id), null);
+        }
+        copyCommitFile(remote, id);
+    }
+
+    /** Copies the blobs a commit tracks from remote, byte for byte,
+     *  skipping the blobs another thread has claimed.
+     *  @param remote remote repository
+     *  @param commit the commit
+     *  @param copiedBlobs hashes of the blobs claimed so far, to which
+     *                     those copied are added, or null to copy every
+     *                     missing blob
+     */
+    private void copyBlobs(Repo remote, Commit commit,
+                           Set<String> copiedBlobs) {
+        if (!commit.hasBlobs()) {
+            return;
+        }
+        for (String fileName : commit.getFileNames()) {
+            String hash = commit.getBlobHash(fileName);
+            File blobFile = Utils.join(_blobs, hash);
+            if (blobFile.exists()) {
+                Maintenance.reused(blobFile);
+            } else if (copiedBlobs == null || copiedBlobs.add(hash)) {
+                Utils.writeContents(blobFile, Utils.readContents(
+                        Utils.join(remote._blobs, hash)));
+                Maintenance.stored(_blobs);
             }
         }
-        while (currentBranchCommit.getParent() != null) {
-            currentBranchCommit = Utils.readObject(Utils.join(
-                    remote._commits, currentBranchCommit.
-                            getParent()), Commit.class);
-            currentBranchCommit.saveCommit(_commits);
-            if (currentBranchCommit.hasBlobs()) {
-                for (String fileName : currentBranchCommit.
-                        getFileNames()) {
-                    currentBranchCommit.getBlob(fileName,
-                            remote._blobs).saveBlob(_blobs);
+    }
+
+    /** Writes commits collected from remote, each after those of its
+     *  parents that are among them.
+     *  @param remote remote repository
+     *  @param commits the commits, by hash
+     */
+    private void copyCommits(Repo remote, Map<String, Commit> commits) {
+        HashSet<String> written = new HashSet<String>();
+        ArrayDeque<String> stack = new ArrayDeque<String>();
+        for (String start : commits.keySet()) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (written.contains(id)) {
+                    stack.pop();
+                    continue;
+                }
+                Commit commit = commits.get(id);
+                boolean ready = true;
+                for (String parent : new String[] {commit.getParent(),
+                                                   commit.getMergeParent()}) {
+                    if (parent != null && commits.containsKey(parent)
+                            && !written.contains(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    copyCommitFile(remote, id);
+                    written.add(id);
                 }
             }
         }
     }
 
-    /** Updates a branch from a given remote branch.
+    /** Copies the file of a commit from remote, byte for byte.
      *  @param remote remote repository
-     *  @param branchFile file where branch to be updated is stored
-     *  @param currentBranchCommit remote branch head
+     *  @param id hash of the commit
      */
-    public void updateFromRemoteBranch(Repo remote, File branchFile,
-                                       Commit currentBranchCommit) {
-        Branch branch = Utils.readObject(branchFile, Branch.class);
-        Commit head = branch.getHead();
-        branch.updateBranchHead(currentBranchCommit);
-        while (!Utils.sha1(Utils.serialize(head)).equals(
-                Utils.sha1(Utils.serialize(currentBranchCommit)))) {
-            currentBranchCommit.saveCommit(_commits);
-            if (currentBranchCommit.hasBlobs()) {
-                for (String fileName : currentBranchCommit.
-                        getFileNames()) {
-                    currentBranchCommit.getBlob(fileName,
-                            remote._blobs).saveBlob(_blobs);
+    private void copyCommitFile(Repo remote, String id) {
+        Utils.writeContents(Utils.join(_commits, id), Utils.readContents(
+                Utils.join(remote._commits, id)));
+        Maintenance.stored(_commits);
+    }
+
+    /** Makes sure the blobs with the given hashes are stored locally,
+     *  copying the missing ones from the promisor remotes in one pass per
+     *  remote. Operations call this up front with every blob they will
+     *  read, so a partial clone fetches them in a single batch.
+     *  @param hashes blob hashes
+     */
+    public void prefetchBlobs(Collection<String> hashes) {
+        if (_promisors.isEmpty()) {
+            return;
+        }
+        ArrayList<String> missing = new ArrayList<String>();
+        for (String hash : new HashSet<String>(hashes)) {
+            if (hash != null && !Utils.join(_blobs, hash).exists()) {
+                missing.add(hash);
+            }
+        }
+        for (String name : _promisors) {
+            if (missing.isEmpty()) {
+                return;
+            }
+            File remoteBlobs = Utils.join(_remotes.get(name), "refs",
+                    "blobs");
+            if (!remoteBlobs.isDirectory()) {
+                continue;
+            }
+            missing.removeIf(hash -> {
+                File remoteBlob = Utils.join(remoteBlobs, hash);
+                if (!remoteBlob.exists()) {
+                    return false;
                 }
+                Utils.writeContents(Utils.join(_blobs, hash),
+                        Utils.readContents(remoteBlob));
+                return true;
+            });
+        }
+    }
+
+    /** Makes sure the blobs of the given commits that differ between them
+     *  are stored locally.
+     *  @param sparse sparse checkout limiting the files whose blobs are
+     *                needed, or null for all files
+     *  @param commits commits whose differing blobs are needed
+     */
+    public void prefetchChangedBlobs(SparseCheckout sparse,
+                                     Commit... commits) {
+        if (_promisors.isEmpty()) {
+            return;
+        }
+        HashSet<String> fileNames = new HashSet<String>();
+        for (Commit commit : commits) {
+            if (commit.hasBlobs()) {
+                fileNames.addAll(commit.getFileNames());
             }
-            currentBranchCommit = Utils.readObject(Utils.join(_commits,
-                    currentBranchCommit.getParent()), Commit.class);
+        }
+        ArrayList<String> hashes = new ArrayList<String>();
+        fileNames.removeIf(fileName -> !SparseCheckout.includes(sparse,
+                fileName));
+        for (String fileName : fileNames) {
+            HashSet<String> versions = new HashSet<String>();
+            for (Commit commit : commits) {
+                if (commit.hasBlobs()) {
+                    versions.add(commit.getBlobHash(fileName));
+                } else {
+                    versions.add(null);
+                }
+            }
+            if (versions.size() > 1) {
+                hashes.addAll(versions);
+            }
+        }
+        prefetchBlobs(hashes);
+    }
+
+    /** Checks if a commit is stored in this repository.
+     *  @param id commit hash
+     *  @return true if the commit is present
+     */
+    public boolean hasCommit(String id) {
+        return Utils.join(_commits, id).exists();
+    }
+
+    /** Returns the hashes of the shallow boundary commits, whose parents
+     *  were not fetched.
+     *  @return set of commit hashes
+     */
+    public Set<String> getShallow() {
+        HashSet<String> shallow = new HashSet<String>();
+        File shallowFile = Utils.join(_gitletfolder, "shallow");
+        if (shallowFile.exists()) {
+            for (String id : Utils.readContentsAsString(shallowFile).
+                    split("\n")) {
+                if (!id.isEmpty()) {
+                    shallow.add(id);
+                }
+            }
+        }
+        return shallow;
+    }
+
+    /** Saves the hashes of the shallow boundary commits.
+     *  @param shallow set of commit hashes
+     */
+    public void saveShallow(Set<String> shallow) {
+        File shallowFile = Utils.join(_gitletfolder, "shallow");
+        if (shallow.isEmpty()) {
+            shallowFile.delete();
+        } else {
+            Utils.writeContents(shallowFile, String.join("\n", shallow)
+                    + "\n");
         }
     }
 
@@ -934,8 +2155,30 @@ public class Repo implements Serializable {
      *  @return repository being worked with
      */
     public static Repo fromFile(File folder) {
-        return Utils.readObject(Utils.join(folder, "repo"),
+        Repo repo = Utils.readObject(Utils.join(folder, "repo"),
                 Repo.class);
+        repo.upgrade();
+        return repo;
+    }
+
+    /** Sets up the fields that a repository saved by an older version
+     *  lacks, which load as null, along with their folders. */
+    private void upgrade() {
+        if (_filters == null) {
+            _filters = Utils.join(_refs, "filters");
+        }
+        if (_origins == null) {
+            _origins = Utils.join(_refs, "origins");
+        }
+        if (_headers == null) {
+            _headers = Utils.join(_refs, "headers");
+        }
+        if (_promisors == null) {
+            _promisors = new HashSet<String>();
+        }
+        _filters.mkdir();
+        _origins.mkdir();
+        _headers.mkdir();
     }
 
     /** Returns _gitletfolder. */
@@ -973,11 +2216,42 @@ public class Repo implements Serializable {
         return _commits;
     }
 
+    /** Returns _headers. */
+    public File getHeaders() {
+        return _headers;
+    }
+
+    /** Returns _filters. */
+    public File getFilters() {
+        return _filters;
+    }
+
     /** Returns _remotes. */
     public Set<String> getRemoteNames() {
         return _remotes.keySet();
     }
 
+    /** Checks if blobs may be missing because of a partial fetch.
+     *  @return true if there are promisor remotes
+     */
+    public boolean hasPromisors() {
+        return !_promisors.isEmpty();
+    }
+
+    /** Size, in bytes, of the buffer through which log is printed. */
+    static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /** Number of log entries between checks for closed output. */
+    static final int FLUSH_INTERVAL = 64;
+
+    /** Largest number of threads that fetch branches at once. */
+    static final int FETCHERS = Math.max(2,
+            Runtime.getRuntime().availableProcessors());
+
+    /** Version of the serialized form of a Repo, fixed at that of the
+     *  first release, so that repositories it saved still load. */
+    private static final long serialVersionUID = 4566369408354564405L;
+
     /** Folder that contains all of files. */
     private File _gitletfolder;
 
@@ -999,6 +2273,18 @@ public class Repo implements Serializable {
     /** Folder that contains all the commits made in the repository. */
     private File _commits;
 
+    /** Folder that contains the path filters of commits. */
+    private File _filters;
+
+    /** Folder that contains the saved line origins of files. */
+    private File _origins;
+
+    /** Folder that contains the headers of commits. */
+    private File _headers;
+
     /** Folder that contains all the remotes made. */
     private HashMap<String, String> _remotes;
+
+    /** Names of the remotes from which missing blobs are fetched lazily. */
+    private HashSet<String> _promisors;
 }
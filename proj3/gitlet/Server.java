@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/** Server that lets Transports fetch from and push to a repository over
+ *  TCP, speaking the Protocol. It listens on the loopback address only,
+ *  and serves each connection on its own thread, so one long-running
+ *  process can front a repository for any number of clients. Pushes that
+ *  move the same branch are serialized, and one whose branch has moved
+ *  since the client listed it is refused.
+ *  @author Colby Chang
+ */
+class Server {
+
+    /** Creates a new Server, listening on a port.
+     *  @param gitletFolder .gitlet folder of the repository served
+     *  @param port port, or 0 for any free one
+     */
+    Server(File gitletFolder, int port) {
+        _gitletFolder = gitletFolder;
+        try {
+            _socket = new ServerSocket(port, BACKLOG,
+                    InetAddress.getLoopbackAddress());
+        } catch (IOException | IllegalArgumentException excp) {
+            throw Utils.error("Could not listen on port %d.", port);
+        }
+    }
+
+    /** Returns the port on which this listens. */
+    int getPort() {
+        return _socket.getLocalPort();
+    }
+
+    /** Accepts connections, and serves each on a new daemon thread, until
+     *  this is closed. */
+    void serve() {
+        while (!_socket.isClosed()) {
+            Socket client;
+            try {
+                client = _socket.accept();
+            } catch (IOException excp) {
+                continue;
+            }
+            Thread thread = new Thread(() -> handle(client));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Stops accepting connections. */
+    void close() {
+        try {
+            _socket.close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Answers the requests of a client, in order, until it disconnects.
+     *  An error is reported to the client, and ends the connection.
+     *  @param client socket of the client
+     */
+    private void handle(Socket client) {
+        try (Socket socket = client) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream(), BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(),
+                            BUFFER_SIZE));
+            try {
+                for (Protocol.Frame frame = Protocol.receive(in);
+                     frame != null; frame = Protocol.receive(in)) {
+                    answer(frame, in, out);
+                }
+            } catch (GitletException | IllegalArgumentException excp) {
+                Protocol.send(out, Protocol.ERROR, excp.getMessage() == null
+                        ? "Request failed." : excp.getMessage());
+                out.flush();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Answers one request.
+     *  @param frame the request
+     *  @param in stream from the client, for the objects of a push
+     *  @param out stream to the client
+     *  @throws IOException if the connection fails
+     */
+    private void answer(Protocol.Frame frame, DataInputStream in,
+                        DataOutputStream out) throws IOException {
+        Repo repo = Repo.fromFile(_gitletFolder);
+        switch (frame.type()) {
+        case Protocol.HELLO:
+            if (frame.integer() != Protocol.VERSION) {
+                throw Utils.error("Remote speaks another protocol version.");
+            }
+            Protocol.send(out, Protocol.HELLO, Protocol.VERSION,
+                    ObjectFormat.name());
+            out.flush();
+            break;
+        case Protocol.LIST_REFS:
+            TreeMap<String, String> refs = refs(repo);
+            ArrayList<Object> fields = new ArrayList<Object>();
+            fields.add(refs.size());
+            for (String branch : refs.keySet()) {
+                fields.add(branch);
+                fields.add(refs.get(branch));
+            }
+            Protocol.send(out, Protocol.REFS, fields.toArray());
+            out.flush();
+            break;
+        case Protocol.FETCH:
+            fetch(repo, frame, out);
+            break;
+        case Protocol.PUSH:
+            push(repo, frame, in, out);
+            break;
+        default:
+            throw Utils.error("Unknown request.");
+        }
+    }
+
+    /** Streams the commits a client wants, and the blobs they track, that
+     *  it does not already have.
+     *  @param repo repository served
+     *  @param frame the FETCH request
+     *  @param out stream to the client
+     *  @throws IOException if the connection fails
+     */
+    private void fetch(Repo repo, Protocol.Frame frame, DataOutputStream out)
+        throws IOException {
+        List<String> wants = ids(frame);
+        IdSet had = new IdSet();
+        IdSet hadBlobs = new IdSet();
+        for (String have : ids(frame)) {
+            if (repo.hasCommit(have) && !had.contains(have)) {
+                had.addAll(repo.ancestors(have));
+                Commit commit = repo.readCommit(have);
+                if (commit.hasBlobs()) {
+                    for (String fileName : commit.getFileNames()) {
+                        hadBlobs.add(commit.getBlobHash(fileName));
+                    }
+                }
+            }
+        }
+        ArrayList<String> commits = new ArrayList<String>();
+        ArrayDeque<String> stack = new ArrayDeque<String>(wants);
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!repo.hasCommit(id) || !had.add(id)) {
+                continue;
+            }
+            commits.add(id);
+            Commit commit = repo.readCommit(id);
+            if (commit.getParent() != null) {
+                stack.push(commit.getParent());
+            }
+            if (commit.isMergeCommit()) {
+                stack.push(commit.getMergeParent());
+            }
+        }
+        Protocol.sendObjects(out, repo, commits, hadBlobs);
+    }
+
+    /** Stores the objects a client pushes, and moves a branch to the new
+     *  head if it is still where the client saw it.
+     *  @param repo repository served
+     *  @param frame the PUSH request
+     *  @param in stream from the client
+     *  @param out stream to the client
+     *  @throws IOException if the connection fails
+     */
+    private void push(Repo repo, Protocol.Frame frame, DataInputStream in,
+                      DataOutputStream out) throws IOException {
+        String branch = frame.string();
+        String old = frame.string();
+        String head = frame.string();
+        if (!branch.matches(BRANCH) || !old.isEmpty() && !old.matches(ID)
+                || !head.matches(ID)) {
+            throw Utils.error("Incorrect operands.");
+        }
+        Protocol.receiveObjects(in, repo);
+        if (!repo.hasCommit(head)) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        synchronized (this) {
+            String current = refs(repo).get(branch);
+            if (current == null ? !old.isEmpty() : !current.equals(old)) {
+                throw Utils.error("Please pull down remote changes before "
+                        + "pushing.");
+            }
+            new Branch(branch, repo.readCommit(head), repo.getCommits(),
+                    repo.getHeads()).saveBranch();
+        }
+        Protocol.send(out, Protocol.OK);
+        out.flush();
+    }
+
+    /** Returns the branches of a repository.
+     *  @param repo the repository
+     *  @return hash of the head of each branch, by name
+     */
+    private static TreeMap<String, String> refs(Repo repo) {
+        TreeMap<String, String> refs = new TreeMap<String, String>();
+        for (String branch : Utils.plainFilenamesIn(repo.getHeads())) {
+            refs.put(branch, Utils.readObject(Utils.join(repo.getHeads(),
+                    branch), Branch.class).getHeadId());
+        }
+        return refs;
+    }
+
+    /** Reads a count followed by that many commit ids.
+     *  @param frame the request holding them
+     *  @return the ids
+     *  @throws IOException if they cannot be read
+     */
+    private static List<String> ids(Protocol.Frame frame)
+        throws IOException {
+        int count = frame.integer();
+        ArrayList<String> ids = new ArrayList<String>();
+        for (int i = 0; i < count; i += 1) {
+            String id = frame.string();
+            if (!id.matches(ID)) {
+                throw Utils.error("Incorrect operands.");
+            }
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    /** Pattern of object ids, which are never paths. */
+    private static final String ID = "[0-9a-f]+";
+
+    /** Pattern of branch names that may be pushed to. */
+    private static final String BRANCH = "(?!\\.\\.?$)[^/\\\\]+";
+
+    /** Port on which gitlet serve listens by default. */
+    static final int DEFAULT_PORT = 9418;
+
+    /** Number of connections that may wait to be accepted. */
+    private static final int BACKLOG = 64;
+
+    /** Size, in bytes, of the buffers of each connection. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** .gitlet folder of the repository served. */
+    private File _gitletFolder;
+
+    /** Socket on which connections are accepted. */
+    private ServerSocket _socket;
+}
@@ -0,0 +1,221 @@
+package gitlet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+
+/** The suite of JUnit tests for fetching from and pushing to a Server,
+ *  which runs in this process on a free port, as in Bench.
+ *  @author Colby Chang
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Creates a served repository with a branch other besides master,
+     *  and an empty client whose origin is the server. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("gitlet-server").toFile();
+        _remote = makeRepo("remote");
+        _client = makeRepo("client");
+        _master = commit(_remote, "master", "f.txt", "master\n");
+        _other = commit(_remote, "other", "g.txt", "other\n");
+        _server = new Server(_remote.getGitletFolder(), 0);
+        Thread thread = new Thread(_server::serve);
+        thread.setDaemon(true);
+        thread.start();
+        _client.createRemote("origin", url());
+    }
+
+    /** Stops the server and deletes the repositories. */
+    @After
+    public void tearDown() {
+        _server.close();
+        _remote.deleteAllFiles(_dir);
+    }
+
+    @Test
+    public void testFetchBranch() {
+        _client.fetchFromRemoteBranch("origin", "master");
+        assertEquals(_master, remoteHead("master"));
+        assertFalse(Utils.join(_client.getHeads(), "origin", "other")
+                .exists());
+        assertTrue(_client.hasCommit(_master));
+        Commit head = _client.readCommit(_master);
+        assertEquals("master\n",
+                head.getBlob("f.txt", _client.getBlobs()).getContents());
+    }
+
+    @Test
+    public void testFetchAll() {
+        _client.fetchAllFromRemote("origin", false);
+        assertEquals(_master, remoteHead("master"));
+        assertEquals(_other, remoteHead("other"));
+        assertEquals("other\n", _client.readCommit(_other)
+                .getBlob("g.txt", _client.getBlobs()).getContents());
+    }
+
+    @Test
+    public void testPush() {
+        _client.fetchFromRemoteBranch("origin", "master");
+        String pushed = commit(_client, "master", _master, "h.txt",
+                "pushed\n");
+        _client.pushToRemoteBranch("origin", "master");
+        assertEquals(pushed, branchHead(_remote, "master"));
+        assertEquals("pushed\n", _remote.readCommit(pushed)
+                .getBlob("h.txt", _remote.getBlobs()).getContents());
+    }
+
+    @Test
+    public void testStalePushRefused() {
+        _client.fetchFromRemoteBranch("origin", "master");
+        String pushed = commit(_client, "master", _master, "h.txt",
+                "pushed\n");
+        String moved = commit(_remote, "master", "f.txt", "moved\n");
+        try (Transport transport = Transport.connect(url())) {
+            transport.push(_client, "master", _master, pushed,
+                    Collections.singletonList(pushed));
+            fail("push over a moved branch was accepted");
+        } catch (GitletException excp) {
+            assertEquals("Please pull down remote changes before pushing.",
+                    excp.getMessage());
+        }
+        assertEquals(moved, branchHead(_remote, "master"));
+    }
+
+    @Test
+    public void testCorruptObjectRefused() throws IOException {
+        byte[] contents = "not a commit".getBytes(StandardCharsets.UTF_8);
+        String id = Utils.hash("a commit".getBytes(StandardCharsets.UTF_8));
+        try (Socket socket = new Socket("localhost", _server.getPort())) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            Protocol.send(out, Protocol.PUSH, "evil", "", id);
+            Protocol.send(out, Protocol.OBJECT, Protocol.COMMIT, id,
+                    contents);
+            out.flush();
+            Protocol.Frame reply = Protocol.expect(in);
+            assertEquals(Protocol.ERROR, reply.type());
+            assertEquals("Remote sent a corrupt object.", reply.string());
+        }
+        assertFalse(Utils.join(_remote.getCommits(), id).exists());
+        assertFalse(Utils.join(_remote.getHeads(), "evil").exists());
+    }
+
+    /** Creates an empty repository under _dir, laid out as init lays one
+     *  out, without the staging area that init writes to the working
+     *  directory.
+     *  @param name name of its directory
+     *  @return the repository
+     */
+    private Repo makeRepo(String name) {
+        File folder = Utils.join(_dir, name, ".gitlet");
+        for (String refs : new String[] {"heads", "blobs", "commits",
+                                         "filters", "origins", "headers"}) {
+            Utils.join(folder, "refs", refs).mkdirs();
+        }
+        Repo repo = new Repo(folder);
+        Commit initial = new Commit("initial commit", null, null);
+        initial.saveCommit(repo.getCommits());
+        new Branch("master", initial, repo.getCommits(), repo.getHeads())
+            .saveBranch();
+        Utils.writeContents(repo.getHead(), "refs/heads/master");
+        repo.saveRepo();
+        return repo;
+    }
+
+    /** Commits one file on top of the master head of a repository, and
+     *  points a branch at the result.
+     *  @param repo the repository
+     *  @param branch name of the branch
+     *  @param fileName name of the file
+     *  @param contents contents of the file
+     *  @return hash of the commit
+     */
+    private String commit(Repo repo, String branch, String fileName,
+                          String contents) {
+        return commit(repo, branch, branchHead(repo, "master"), fileName,
+                contents);
+    }
+
+    /** Commits one file on top of a commit, and points a branch at the
+     *  result.
+     *  @param repo the repository
+     *  @param branch name of the branch
+     *  @param parent hash of the parent commit
+     *  @param fileName name of the file
+     *  @param contents contents of the file
+     *  @return hash of the commit
+     */
+    private String commit(Repo repo, String branch, String parent,
+                          String fileName, String contents) {
+        Blob blob = new Blob(fileName, contents);
+        blob.saveBlob(repo.getBlobs());
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        blobs.put(fileName, Utils.hash(Utils.serialize(blob)));
+        Commit commit = new Commit("Commit " + fileName,
+                repo.readCommit(parent), blobs);
+        commit.saveCommit(repo.getCommits());
+        new Branch(branch, commit, repo.getCommits(), repo.getHeads())
+            .saveBranch();
+        return Utils.hash(Utils.serialize(commit));
+    }
+
+    /** Returns the head of a branch of a repository.
+     *  @param repo the repository
+     *  @param branch name of the branch
+     *  @return hash of its head
+     */
+    private static String branchHead(Repo repo, String branch) {
+        return Utils.readObject(Utils.join(repo.getHeads(), branch),
+                Branch.class).getHeadId();
+    }
+
+    /** Returns the head of a branch of origin, as the client last fetched
+     *  it.
+     *  @param branch name of the branch
+     *  @return hash of its head
+     */
+    private String remoteHead(String branch) {
+        return branchHead(_client, "origin/" + branch);
+    }
+
+    /** Returns the URL of the server. */
+    private String url() {
+        return "gitlet://localhost:" + _server.getPort();
+    }
+
+    /** Directory holding the repositories. */
+    private File _dir;
+
+    /** Repository served. */
+    private Repo _remote;
+
+    /** Repository fetching from and pushing to _remote. */
+    private Repo _client;
+
+    /** Server of _remote. */
+    private Server _server;
+
+    /** Heads of master and other in _remote. */
+    private String _master, _other;
+}
@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/** Patterns that restrict the files of a commit written to, and scanned
+ *  in, the working directory. A pattern is a glob in which '*' matches any
+ *  characters but '/', "**" matches any characters and '?' matches one
+ *  character but '/'; a pattern ending in '/' matches everything under that
+ *  directory. All patterns are compiled into one regular expression, so
+ *  testing a path costs a single match no matter how many patterns there
+ *  are.
+ *  @author Colby Chang
+ */
+public class SparseCheckout {
+
+    /** Creates a new SparseCheckout.
+     *  @param patterns glob patterns of the included paths
+     */
+    public SparseCheckout(ArrayList<String> patterns) {
+        _patterns = patterns;
+        StringBuilder regex = new StringBuilder();
+        for (String pattern : patterns) {
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append(toRegex(pattern));
+        }
+        _regex = Pattern.compile(regex.toString());
+    }
+
+    /** Checks if a path is included in the checkout.
+     *  @param path file path, relative to the working directory
+     *  @return true if some pattern matches path
+     */
+    public boolean includes(String path) {
+        return _regex.matcher(path).matches();
+    }
+
+    /** Returns the patterns.
+     *  @return glob patterns of the included paths, in the order given
+     */
+    public ArrayList<String> getPatterns() {
+        return _patterns;
+    }
+
+    /** Saves the patterns, one per line, in the sparse-checkout file.
+     *  @param gitletFolder folder in which gitlet data is stored
+     */
+    public void saveSparseCheckout(File gitletFolder) {
+        Utils.writeContents(Utils.join(gitletFolder, FILE_NAME),
+                String.join("\n", _patterns) + "\n");
+    }
+
+    /** Returns the sparse checkout of a repository.
+     *  @param gitletFolder folder in which gitlet data is stored
+     *  @return the saved patterns, or null if sparse checkout is disabled
+     */
+    public static SparseCheckout fromFile(File gitletFolder) {
+        File file = Utils.join(gitletFolder, FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        ArrayList<String> patterns = new ArrayList<String>();
+        for (String line : Utils.readContentsAsString(file).split("\n")) {
+            if (!line.trim().isEmpty()) {
+                patterns.add(line.trim());
+            }
+        }
+        return new SparseCheckout(patterns);
+    }
+
+    /** Disables sparse checkout in a repository.
+     *  @param gitletFolder folder in which gitlet data is stored
+     */
+    public static void disable(File gitletFolder) {
+        Utils.join(gitletFolder, FILE_NAME).delete();
+    }
+
+    /** Checks if a path is included by a sparse checkout.
+     *  @param sparse sparse checkout, or null if it is disabled
+     *  @param path file path
+     *  @return true if sparse is null or includes path
+     */
+    public static boolean includes(SparseCheckout sparse, String path) {
+        return sparse == null || sparse.includes(path);
+    }
+
+    /** Returns the regular expression equivalent to a glob pattern.
+     *  @param pattern glob pattern
+     *  @return regular expression matching the same paths
+     */
+    static String toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder("(?:");
+        for (int i = 0; i < pattern.length(); i += 1) {
+            char c = pattern.charAt(i);
+            if (pattern.startsWith("**", i)) {
+                regex.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        if (pattern.endsWith("/")) {
+            regex.append(".*");
+        }
+        return regex.append(')').toString();
+    }
+
+    /** Name of the file, in the gitlet folder, holding the patterns. */
+    static final String FILE_NAME = "sparse-checkout";
+
+    /** Glob patterns of the included paths. */
+    private ArrayList<String> _patterns;
+
+    /** Regular expression matching every included path. */
+    private Pattern _regex;
+}
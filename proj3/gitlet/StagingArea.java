@@ -127,4 +127,8 @@ public class StagingArea implements Serializable {
 
     /** Set of file names of files to be removed. **/
     private HashSet<String> _remove;
+
+    /** Version of the serialized form, fixed at that of the first
+     *  release, so that staging areas it saved still load. */
+    private static final long serialVersionUID = 18974879928776210L;
 }
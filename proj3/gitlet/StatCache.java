@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+
+/** Cache of what is known about the files of the working directory: for
+ *  each, its size, modification time and xxHash64 when it was last seen to
+ *  hold the contents of a blob, and the id of that blob. A file whose size
+ *  and modification time are unchanged is taken to still hold that blob
+ *  without being read; one whose modification time alone has changed is
+ *  read and compared by its fast hash, which is far cheaper than reading
+ *  the blob or naming a new one. Only files that do change pay for that.
+ *
+ *  A file modified within RACY_MILLIS of being recorded could change again
+ *  without its modification time changing, so its stat is never trusted
+ *  and its fast hash is always checked.
+ *  @author Colby Chang
+ */
+public class StatCache implements Serializable {
+
+    /** Creates a new, empty StatCache. */
+    public StatCache() {
+        _entries = new HashMap<String, Entry>();
+    }
+
+    /** Returns the blob a file is known to hold.
+     *  @param file the file
+     *  @param name its path in the working directory
+     *  @return id of the blob it holds, or null if that is not known
+     */
+    public String lookup(File file, String name) {
+        Entry entry = _entries.get(name);
+        if (entry == null || file.length() != entry._size) {
+            return null;
+        }
+        if (entry._trusted && file.lastModified() == entry._modified) {
+            return entry._blob;
+        }
+        byte[] contents = Utils.readContents(file);
+        if (XxHash64.hash(contents) != entry._hash) {
+            return null;
+        }
+        record(name, file, contents, entry._blob);
+        return entry._blob;
+    }
+
+    /** Checks if a file is known to hold a blob.
+     *  @param file the file
+     *  @param name its path in the working directory
+     *  @param blob id of the blob
+     *  @return true if it is known to hold that blob, and false if it does
+     *          not or that is not known
+     */
+    public boolean matches(File file, String name, String blob) {
+        return blob.equals(lookup(file, name));
+    }
+
+    /** Records that a file holds a blob.
+     *  @param name path of the file in the working directory
+     *  @param file the file
+     *  @param contents contents of the file
+     *  @param blob id of the blob
+     */
+    public void record(String name, File file, byte[] contents,
+                       String blob) {
+        long modified = file.lastModified();
+        Entry entry = new Entry(contents.length, modified,
+                XxHash64.hash(contents), blob,
+                modified < System.currentTimeMillis() - RACY_MILLIS);
+        if (!entry.equals(_entries.get(name))) {
+            _entries.put(name, entry);
+            _changed = true;
+        }
+    }
+
+    /** Drops the entries of files no longer in the working directory.
+     *  @return number of entries dropped
+     */
+    public int prune() {
+        int before = _entries.size();
+        _entries.keySet().removeIf(name -> !new File(name).isFile());
+        if (_entries.size() != before) {
+            _changed = true;
+        }
+        return before - _entries.size();
+    }
+
+    /** Saves the cache to the stat-cache file, if it has changed.
+     *  @param gitletFolder folder in which gitlet data is stored
+     */
+    public void saveStatCache(File gitletFolder) {
+        if (_changed) {
+            Utils.writeObject(Utils.join(gitletFolder, FILE_NAME), this);
+            _changed = false;
+        }
+    }
+
+    /** Returns the stat cache of a repository.
+     *  @param gitletFolder folder in which gitlet data is stored
+     *  @return the saved cache, or an empty one if there is none
+     */
+    public static StatCache fromFile(File gitletFolder) {
+        File file = Utils.join(gitletFolder, FILE_NAME);
+        if (!file.exists()) {
+            return new StatCache();
+        }
+        return Utils.readObject(file, StatCache.class);
+    }
+
+    /** What is known about one file. */
+    private static class Entry implements Serializable {
+
+        /** Creates a new Entry.
+         *  @param size size of the file
+         *  @param modified modification time of the file
+         *  @param hash xxHash64 of the contents of the file
+         *  @param blob id of the blob the file holds
+         *  @param trusted true if size and modified alone show that the file
+         *                 is unchanged
+         */
+        Entry(long size, long modified, long hash, String blob,
+              boolean trusted) {
+            _size = size;
+            _modified = modified;
+            _hash = hash;
+            _blob = blob;
+            _trusted = trusted;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            Entry entry = (Entry) obj;
+            return _size == entry._size && _modified == entry._modified
+                && _hash == entry._hash && _blob.equals(entry._blob)
+                && _trusted == entry._trusted;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(_hash);
+        }
+
+        /** Size of the file. */
+        private long _size;
+
+        /** Modification time of the file. */
+        private long _modified;
+
+        /** xxHash64 of the contents of the file. */
+        private long _hash;
+
+        /** Id of the blob the file holds. */
+        private String _blob;
+
+        /** True if _size and _modified alone show the file is unchanged. */
+        private boolean _trusted;
+
+        /** Version of the serialized form of an entry. */
+        private static final long serialVersionUID = -7979016822883934541L;
+    }
+
+    /** Name of the file, in the .gitlet folder, holding the cache. */
+    static final String FILE_NAME = "stat-cache";
+
+    /** Time, in milliseconds, within which a file may be modified more than
+     *  once with the same modification time. */
+    static final long RACY_MILLIS = 2000;
+
+    /** Entries of the cache, by path. */
+    private HashMap<String, Entry> _entries;
+
+    /** True if the cache has changed since it was read. */
+    private transient boolean _changed;
+
+    /** Version of the serialized form, pinned so that a cache saved
+     *  before a change to this class still loads. */
+    private static final long serialVersionUID = 4421818960896549726L;
+}
@@ -0,0 +1,295 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/** Opt-in instrumentation of the primitive operations of gitlet, enabled
+ *  by the GITLET_TRACE environment variable. Every call to an operation
+ *  in OPS is counted and timed, along with the bytes it handles, under the
+ *  phase in which it happens. A phase is a command, or a named step within
+ *  one, and nested phases are named by their paths, as in "merge/split".
+ *  Times are inclusive, so readObject includes the readContents it calls.
+ *
+ *  When GITLET_TRACE is "1" or "summary", a JSON summary is printed to
+ *  the standard error at exit; "summary:FILE" writes it to FILE instead,
+ *  and "chrome:FILE" writes every phase and call to FILE in the Chrome
+ *  trace event format, for chrome://tracing or Perfetto.
+ *  @author Colby Chang
+ */
+class Trace {
+
+    /** Operation of Utils.readObject. */
+    static final int READ_OBJECT = 0;
+    /** Operation of Utils.writeObject. */
+    static final int WRITE_OBJECT = 1;
+    /** Operation of Utils.sha1 and Utils.hash. */
+    static final int SHA1 = 2;
+    /** Operation of Utils.serialize. */
+    static final int SERIALIZE = 3;
+    /** Operation of Utils.listFiles, Utils.plainFilenamesIn and
+     *  DirectoryFiles. */
+    static final int LIST_FILES = 4;
+    /** Operation of Utils.readContents, when it reads the disk. */
+    static final int READ = 5;
+    /** Operation of Utils.writeContents. */
+    static final int WRITE = 6;
+
+    /** Names of the operations. */
+    static final String[] OPS = {
+        "readObject", "writeObject", "sha1", "serialize", "listFiles",
+        "readContents", "writeContents",
+    };
+
+    /** Names of the amounts each operation handles. */
+    private static final String[] UNITS = {
+        "bytes", "bytes", "bytes", "bytes", "entries", "bytes", "bytes",
+    };
+
+    /** Value of GITLET_TRACE, or null if tracing is off. */
+    private static final String MODE = System.getenv("GITLET_TRACE");
+
+    /** True if tracing is on. */
+    static final boolean ENABLED = MODE != null && !MODE.isEmpty()
+        && !MODE.equals("0");
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Trace::report));
+        }
+    }
+
+    /** Returns the time at which an operation starts.
+     *  @return current time in nanoseconds, or 0 if tracing is off
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /** Records a call to an operation that has just finished.
+     *  @param op the operation
+     *  @param start time at which it started, as returned by start
+     *  @param amount number of bytes or entries it handled
+     */
+    static void record(int op, long start, long amount) {
+        if (!ENABLED) {
+            return;
+        }
+        long end = System.nanoTime();
+        synchronized (Trace.class) {
+            long[] stats = _stats.get(_phase);
+            stats[PHASE_STATS + 3 * op] += 1;
+            stats[PHASE_STATS + 3 * op + 1] += end - start;
+            stats[PHASE_STATS + 3 * op + 2] += amount;
+            if (_events != null) {
+                addEvent(String.format(Locale.ROOT, "{\"name\": \"%s\", "
+                        + "\"ph\": \"X\", \"ts\": %.3f, \"dur\": %.3f, "
+                        + "\"pid\": 1, \"tid\": %d, \"args\": "
+                        + "{\"%s\": %d}}", OPS[op], micros(start),
+                        (end - start) / 1e3, Thread.currentThread().getId(),
+                        UNITS[op], amount));
+            }
+        }
+    }
+
+    /** Starts a phase within the current one.
+     *  @param name name of the phase
+     *  @return number of phases open before this one, to be given to
+     *          endPhase
+     */
+    static int beginPhase(String name) {
+        if (!ENABLED) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        synchronized (Trace.class) {
+            int depth = _open.size();
+            _open.push(_phase);
+            _starts.push(now);
+            _threads.push(Thread.currentThread().getId());
+            _phase = _phase.isEmpty() ? name : _phase + "/" + name;
+            _stats.computeIfAbsent(_phase,
+                k -> new long[PHASE_STATS + 3 * OPS.length])[0] += 1;
+            if (_events != null) {
+                addEvent(String.format(Locale.ROOT, "{\"name\": \"%s\", "
+                        + "\"ph\": \"B\", \"ts\": %.3f, \"pid\": 1, "
+                        + "\"tid\": %d}", escape(name), micros(now),
+                        Thread.currentThread().getId()));
+            }
+            return depth;
+        }
+    }
+
+    /** Ends the phases opened since a call to beginPhase, including the
+     *  phase it began, so that phases left open by an error are closed
+     *  too.
+     *  @param depth value returned by that call to beginPhase
+     */
+    static void endPhase(int depth) {
+        if (!ENABLED) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (Trace.class) {
+            while (_open.size() > depth) {
+                _stats.get(_phase)[1] += now - _starts.pop();
+                _phase = _open.pop();
+                long thread = _threads.pop();
+                if (_events != null) {
+                    addEvent(String.format(Locale.ROOT, "{\"ph\": \"E\", "
+                            + "\"ts\": %.3f, \"pid\": 1, \"tid\": %d}",
+                            micros(now), thread));
+                }
+            }
+        }
+    }
+
+    /** Writes the report that GITLET_TRACE asks for. */
+    private static synchronized void report() {
+        endPhase(0);
+        String text;
+        String file = null;
+        if (MODE.startsWith("chrome:")) {
+            file = MODE.substring("chrome:".length());
+            text = "{\"traceEvents\": [\n" + String.join(",\n", _events)
+                + "\n], \"otherData\": {\"droppedEvents\": " + _dropped
+                + "}}\n";
+        } else {
+            if (MODE.startsWith("summary:")) {
+                file = MODE.substring("summary:".length());
+            }
+            text = summary();
+        }
+        if (file == null) {
+            System.err.print(text);
+            return;
+        }
+        try {
+            Files.write(new File(file).toPath(),
+                    text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            System.err.println("Could not write trace to " + file + ".");
+        }
+    }
+
+    /** Returns the counts, times and amounts of every operation in every
+     *  phase, as JSON.
+     *  @return the summary
+     */
+    private static String summary() {
+        StringBuilder json = new StringBuilder();
+        json.append(String.format(Locale.ROOT, "{\n  \"wall_ms\": %.3f,\n"
+                + "  \"phases\": [", (System.nanoTime() - EPOCH) / 1e6));
+        String separator = "\n";
+        for (String phase : _stats.keySet()) {
+            long[] stats = _stats.get(phase);
+            if (phase.isEmpty() && isIdle(stats)) {
+                continue;
+            }
+            json.append(separator).append(String.format(Locale.ROOT,
+                    "    {\"phase\": \"%s\", \"calls\": %d, "
+                    + "\"wall_ms\": %.3f, \"ops\": {", escape(phase),
+                    stats[0], stats[1] / 1e6));
+            String opSeparator = "";
+            for (int op = 0; op < OPS.length; op += 1) {
+                int i = PHASE_STATS + 3 * op;
+                if (stats[i] == 0) {
+                    continue;
+                }
+                json.append(opSeparator).append(String.format(Locale.ROOT,
+                        "\n      \"%s\": {\"count\": %d, \"ms\": %.3f, "
+                        + "\"%s\": %d}", OPS[op], stats[i],
+                        stats[i + 1] / 1e6, UNITS[op], stats[i + 2]));
+                opSeparator = ",";
+            }
+            json.append(opSeparator.isEmpty() ? "}}" : "\n    }}");
+            separator = ",\n";
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    /** Checks if no operation was recorded in a phase.
+     *  @param stats statistics of the phase
+     *  @return true if every operation count is 0
+     */
+    private static boolean isIdle(long[] stats) {
+        for (int op = 0; op < OPS.length; op += 1) {
+            if (stats[PHASE_STATS + 3 * op] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Adds an event to the Chrome trace, unless it has MAX_EVENTS.
+     *  @param event the event, as JSON
+     */
+    private static void addEvent(String event) {
+        if (_events.size() < MAX_EVENTS) {
+            _events.add(event);
+        } else {
+            _dropped += 1;
+        }
+    }
+
+    /** Returns the time since tracing started.
+     *  @param nanos time in nanoseconds
+     *  @return time since EPOCH in microseconds
+     */
+    private static double micros(long nanos) {
+        return (nanos - EPOCH) / 1e3;
+    }
+
+    /** Escapes a string for use in JSON.
+     *  @param s the string
+     *  @return s with quotes and backslashes escaped
+     */
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /** Number of statistics of a phase before those of its operations:
+     *  the number of times it began and its total wall time. */
+    private static final int PHASE_STATS = 2;
+
+    /** Largest number of events kept for a Chrome trace. */
+    private static final int MAX_EVENTS = 1 << 20;
+
+    /** Time at which tracing started, in nanoseconds. */
+    private static final long EPOCH = System.nanoTime();
+
+    /** Path of the current phase, empty outside of every phase. */
+    private static String _phase = "";
+
+    /** Paths of the phases that enclose the current one. */
+    private static ArrayDeque<String> _open = new ArrayDeque<String>();
+
+    /** Start times of the open phases. */
+    private static ArrayDeque<Long> _starts = new ArrayDeque<Long>();
+
+    /** Ids of the threads that began the open phases. */
+    private static ArrayDeque<Long> _threads = new ArrayDeque<Long>();
+
+    /** Statistics of every phase, by path, in the order first begun. For
+     *  each, the number of times it began, its wall time, and then the
+     *  count, time and amount of each operation. */
+    private static LinkedHashMap<String, long[]> _stats =
+        new LinkedHashMap<String, long[]>();
+
+    /** Events of the Chrome trace, or null if none is written. */
+    private static ArrayList<String> _events =
+        ENABLED && MODE.startsWith("chrome:") ? new ArrayList<String>()
+        : null;
+
+    /** Number of events left out of the Chrome trace. */
+    private static long _dropped;
+
+    static {
+        _stats.put("", new long[PHASE_STATS + 3 * OPS.length]);
+    }
+}
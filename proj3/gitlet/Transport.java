@@ -0,0 +1,174 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Connection to a repository served by a Server, for remotes whose
+ *  location is a URL of the form gitlet://HOST:PORT rather than a
+ *  directory. Connecting sends the HELLO and LIST_REFS requests together,
+ *  without waiting for the first reply, so that the refs are known after
+ *  a single round trip; a fetch or push then takes one more.
+ *  @author Colby Chang
+ */
+class Transport implements Closeable {
+
+    /** Checks if the location of a remote is a URL served by a Server.
+     *  @param location location of the remote
+     *  @return true if it is a gitlet:// URL
+     */
+    static boolean isUrl(String location) {
+        return URL.matcher(location).matches();
+    }
+
+    /** Connects to a Server and reads its refs.
+     *  @param url URL of the remote
+     *  @return the connection
+     */
+    static Transport connect(String url) {
+        Matcher matcher = URL.matcher(url);
+        if (!matcher.matches()) {
+            throw Utils.error("Incorrect operands.");
+        }
+        try {
+            return new Transport(new Socket(matcher.group(1),
+                    Integer.parseInt(matcher.group(2))));
+        } catch (IOException | IllegalArgumentException excp) {
+            throw Utils.error("Could not connect to remote.");
+        }
+    }
+
+    /** Creates a new Transport over a connected socket.
+     *  @param socket the socket
+     *  @throws IOException if the connection fails
+     */
+    private Transport(Socket socket) throws IOException {
+        _socket = socket;
+        try {
+            socket.setTcpNoDelay(true);
+            _in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream(), BUFFER_SIZE));
+            _out = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream(), BUFFER_SIZE));
+            Protocol.send(_out, Protocol.HELLO, Protocol.VERSION,
+                    ObjectFormat.name());
+            Protocol.send(_out, Protocol.LIST_REFS);
+            _out.flush();
+            Protocol.Frame hello = reply(Protocol.HELLO);
+            hello.integer();
+            if (!hello.string().equals(ObjectFormat.name())) {
+                throw Utils.error("Remote uses a different object format.");
+            }
+            Protocol.Frame refs = reply(Protocol.REFS);
+            for (int n = refs.integer(); n > 0; n -= 1) {
+                _refs.put(refs.string(), refs.string());
+            }
+        } catch (IOException | RuntimeException excp) {
+            close();
+            throw excp;
+        }
+    }
+
+    /** Returns the branches of the remote.
+     *  @return hash of the head of each branch, by name
+     */
+    TreeMap<String, String> refs() {
+        return _refs;
+    }
+
+    /** Copies the history of some commits of the remote into a
+     *  repository.
+     *  @param repo the repository
+     *  @param wants hashes of the commits
+     *  @param haves hashes of commits whose histories repo has in full,
+     *               which the remote leaves out
+     *  @return number of objects stored
+     */
+    int fetch(Repo repo, Collection<String> wants, Collection<String> haves) {
+        try {
+            ArrayList<Object> fields = new ArrayList<Object>();
+            fields.add(wants.size());
+            fields.addAll(wants);
+            fields.add(haves.size());
+            fields.addAll(haves);
+            Protocol.send(_out, Protocol.FETCH, fields.toArray());
+            _out.flush();
+            return Protocol.receiveObjects(_in, repo);
+        } catch (IOException excp) {
+            throw Utils.error("Lost connection to remote.");
+        }
+    }
+
+    /** Sends commits of a repository to the remote, with their blobs, and
+     *  moves a branch of the remote to a new head.
+     *  @param repo the repository
+     *  @param branch name of the branch
+     *  @param old hash of the head at which the branch must be, or null if
+     *             it must not exist
+     *  @param head hash of the new head
+     *  @param commits hashes of the commits the remote lacks
+     */
+    void push(Repo repo, String branch, String old, String head,
+              Collection<String> commits) {
+        try {
+            Protocol.send(_out, Protocol.PUSH, branch,
+                    old == null ? "" : old, head);
+            Protocol.sendObjects(_out, repo, commits, new IdSet());
+            reply(Protocol.OK);
+        } catch (IOException excp) {
+            throw Utils.error("Lost connection to remote.");
+        }
+    }
+
+    /** Reads the reply to a request.
+     *  @param type type the reply must have
+     *  @return the reply
+     *  @throws IOException if it cannot be read
+     */
+    private Protocol.Frame reply(byte type) throws IOException {
+        Protocol.Frame frame = Protocol.expect(_in);
+        if (frame.type() == Protocol.ERROR) {
+            throw Utils.error(frame.string());
+        } else if (frame.type() != type) {
+            throw new IOException("unexpected frame " + frame.type());
+        }
+        return frame;
+    }
+
+    @Override
+    public void close() {
+        try {
+            _socket.close();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Pattern of the URLs of served remotes. */
+    private static final Pattern URL =
+        Pattern.compile("gitlet://([^:/]+):(\\d{1,5})/?");
+
+    /** Size, in bytes, of the buffers of the connection. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Socket connected to the Server. */
+    private Socket _socket;
+
+    /** Stream from the Server. */
+    private DataInputStream _in;
+
+    /** Stream to the Server. */
+    private DataOutputStream _out;
+
+    /** Branches of the remote, by name. */
+    private TreeMap<String, String> _refs = new TreeMap<String, String>();
+}
@@ -1,9 +1,8 @@
 package gitlet;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -15,7 +14,6 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -33,26 +31,50 @@ class Utils {
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return digest(MessageDigest.getInstance("SHA-1"), vals);
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns the id, in the object format of the current repository, of
+     *  an object whose contents are the concatenation of VALS, which may be
+     *  any mixture of byte arrays and Strings. */
+    static String hash(Object... vals) {
+        return digest(ObjectFormat.newDigest(), vals);
+    }
+
+    /** Returns the hash, as a hexadecimal numeral, of the concatenation of
+     *  VALS, computed by MD. */
+    private static String digest(MessageDigest md, Object... vals) {
+        long start = Trace.start();
+        long size = 0;
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+                size += ((byte[]) val).length;
+            } else if (val instanceof String) {
+                byte[] bytes = ((String) val).getBytes(
+                        StandardCharsets.UTF_8);
+                md.update(bytes);
+                size += bytes.length;
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
+            }
+        }
+        byte[] hash = md.digest();
+        char[] result = new char[2 * hash.length];
+        for (int i = 0; i < hash.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        Trace.record(Trace.SHA1, start, size);
+        return new String(result);
+    }
+
+    /** Digits of hexadecimal numerals. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -87,14 +109,23 @@ class Utils {
     /* READING AND WRITING FILE CONTENTS */
 
     /** Return the entire contents of FILE as a byte array.  FILE must
-     *  be a normal file.  Throws IllegalArgumentException
+     *  be a normal file.  Contents held by FileCache are returned without
+     *  reading the disk.  Throws IllegalArgumentException
      *  in case of problems. */
     static byte[] readContents(File file) {
+        byte[] cached = FileCache.get(file);
+        if (cached != null) {
+            return cached;
+        }
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            long start = Trace.start();
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.record(Trace.READ, start, contents.length);
+            FileCache.remember(file, contents);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -109,16 +140,17 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
+     *  either a String or a byte array.  Overwrites that FileCache defers
+     *  reach the disk when it is flushed.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Trace.start();
         try {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
-            BufferedOutputStream str =
-                new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            ByteArrayOutputStream str = new ByteArrayOutputStream();
             for (Object obj : contents) {
                 if (obj instanceof byte[]) {
                     str.write((byte[]) obj);
@@ -126,7 +158,11 @@ class Utils {
                     str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
                 }
             }
-            str.close();
+            byte[] bytes = str.toByteArray();
+            if (!FileCache.put(file, bytes)) {
+                Files.write(file.toPath(), bytes);
+            }
+            Trace.record(Trace.WRITE, start, bytes.length);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -136,11 +172,14 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Trace.start();
         try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
+            byte[] contents = readContents(file);
+            ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(contents));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.record(Trace.READ_OBJECT, start, contents.length);
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -150,7 +189,10 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        long start = Trace.start();
+        byte[] contents = serialize(obj);
+        writeContents(file, contents);
+        Trace.record(Trace.WRITE_OBJECT, start, contents.length);
     }
 
     /* DIRECTORIES */
@@ -168,10 +210,12 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        long start = Trace.start();
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
         } else {
+            Trace.record(Trace.LIST_FILES, start, files.length);
             Arrays.sort(files);
             return Arrays.asList(files);
         }
@@ -184,6 +228,17 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns the files in the directory DIR, in no particular order.
+     *  Returns null if DIR does not denote a directory. */
+    static File[] listFiles(File dir) {
+        long start = Trace.start();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            Trace.record(Trace.LIST_FILES, start, files.length);
+        }
+        return files;
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -205,12 +260,15 @@ class Utils {
 
     /** Returns a byte array containing the serialized contents of OBJ. */
     static byte[] serialize(Serializable obj) {
+        long start = Trace.start();
         try {
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
             ObjectOutputStream objectStream = new ObjectOutputStream(stream);
             objectStream.writeObject(obj);
             objectStream.close();
-            return stream.toByteArray();
+            byte[] bytes = stream.toByteArray();
+            Trace.record(Trace.SERIALIZE, start, bytes.length);
+            return bytes;
         } catch (IOException excp) {
             throw error("Internal error serializing commit.");
         }
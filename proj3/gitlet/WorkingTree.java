@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.RecursiveTask;
+
+/** The working directory, whose files may be in nested directories. Files
+ *  are named by their paths relative to the working directory, separated
+ *  by '/', which is how commits, blobs and the staging area key them.
+ *  @author Colby Chang
+ */
+public class WorkingTree {
+
+    /** Returns the name of a file in the working directory.
+     *  @param file the file, relative to the working directory or absolute
+     *  @return its normalized relative path, separated by '/'
+     */
+    public static String path(File file) {
+        Path path = file.toPath();
+        if (path.isAbsolute()) {
+            path = ROOT.relativize(path);
+        }
+        String name = path.normalize().toString().replace(
+                File.separatorChar, '/');
+        if (name.isEmpty() || name.equals("..") || name.startsWith("../")) {
+            throw Utils.error("File is outside the working directory.");
+        }
+        return name;
+    }
+
+    /** Returns the names of all files in the working directory that are
+     *  not ignored, in sorted order. Directories are scanned in parallel,
+     *  and ignored directories, the .gitlet folder and directories holding
+     *  other repositories are not descended into.
+     *  @param ignore ignore rules of the working directory
+     *  @return relative paths of the files
+     */
+    public static ArrayList<String> walk(IgnoreRules ignore) {
+        ArrayList<String> files = new Walker(Paths.get("."), "", ignore).
+                invoke();
+        Collections.sort(files);
+        return files;
+    }
+
+    /** Creates the directories that will contain a file.
+     *  @param file file about to be written
+     */
+    public static void makeParents(File file) {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            parent.mkdirs();
+        }
+    }
+
+    /** Deletes a file from the working directory, along with any
+     *  directories that deleting it leaves empty. Refuses, like
+     *  Utils.restrictedDelete, unless the working directory holds a .gitlet
+     *  folder.
+     *  @param name relative path of the file
+     */
+    public static void delete(String name) {
+        if (!Main.GITLET_FOLDER.isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working "
+                    + "directory");
+        }
+        File file = new File(name);
+        if (file.isDirectory() || !file.delete()) {
+            return;
+        }
+        File dir = file.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Task that lists the files under a directory, forking a task for
+     *  each subdirectory. */
+    private static class Walker extends RecursiveTask<ArrayList<String>> {
+
+        /** Creates a new Walker.
+         *  @param dir directory to be listed
+         *  @param prefix relative path of dir followed by '/', or empty for
+         *                the working directory
+         *  @param ignore ignore rules of the working directory
+         */
+        Walker(Path dir, String prefix, IgnoreRules ignore) {
+            _dir = dir;
+            _prefix = prefix;
+            _ignore = ignore;
+        }
+
+        /** Lists the files under _dir. The walkers forked for its
+         *  subdirectories are joined even if _dir cannot be read in full,
+         *  so that none is left running.
+         *  @return relative paths of the files
+         */
+        @Override
+        protected ArrayList<String> compute() {
+            ArrayList<String> files = new ArrayList<String>();
+            ArrayList<Walker> subdirs = new ArrayList<Walker>();
+            long start = Trace.start();
+            int entries = 0;
+            try (DirectoryStream<Path> stream =
+                     Files.newDirectoryStream(_dir)) {
+                for (Path entry : stream) {
+                    entries += 1;
+                    String name = _prefix + entry.getFileName();
+                    BasicFileAttributes attributes = Files.readAttributes(
+                            entry, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        if (!name.equals(".gitlet")
+                                && !_ignore.isIgnored(name, true)
+                                && !Files.exists(entry.resolve(".gitlet"))) {
+                            Walker walker = new Walker(entry, name + "/",
+                                    _ignore);
+                            walker.fork();
+                            subdirs.add(walker);
+                        }
+                    } else if ((attributes.isRegularFile()
+                            || Files.isRegularFile(entry))
+                            && !_ignore.isIgnored(name, false)) {
+                        files.add(name);
+                    }
+                }
+                Trace.record(Trace.LIST_FILES, start, entries);
+            } catch (IOException excp) {
+                return files;
+            } finally {
+                for (Walker walker : subdirs) {
+                    files.addAll(walker.join());
+                }
+            }
+            return files;
+        }
+
+        /** Directory to be listed. */
+        private Path _dir;
+
+        /** Relative path of _dir followed by '/', or empty. */
+        private String _prefix;
+
+        /** Ignore rules of the working directory. */
+        private IgnoreRules _ignore;
+    }
+
+    /** Absolute path of the working directory. */
+    private static final Path ROOT = Paths.get("").toAbsolutePath();
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/** The xxHash64 function, a fast non-cryptographic 64-bit hash. It is used
+ *  only to tell whether a file has changed, never to name objects.
+ *  @author Colby Chang
+ */
+class XxHash64 {
+
+    /** Returns the xxHash64 of some bytes, with seed 0.
+     *  @param data bytes to be hashed
+     *  @return their hash
+     */
+    static long hash(byte[] data) {
+        return hash(data, 0, data.length, 0);
+    }
+
+    /** Returns the xxHash64 of a range of bytes.
+     *  @param data array holding the bytes
+     *  @param offset index of the first byte
+     *  @param length number of bytes
+     *  @param seed seed of the hash
+     *  @return their hash
+     */
+    static long hash(byte[] data, int offset, int length, long seed) {
+        int end = offset + length;
+        int p = offset;
+        long h;
+        if (length >= STRIPE) {
+            long v1 = seed + P1 + P2, v2 = seed + P2, v3 = seed;
+            long v4 = seed - P1;
+            do {
+                v1 = round(v1, (long) LONGS.get(data, p));
+                v2 = round(v2, (long) LONGS.get(data, p + 8));
+                v3 = round(v3, (long) LONGS.get(data, p + 16));
+                v4 = round(v4, (long) LONGS.get(data, p + 24));
+                p += STRIPE;
+            } while (p <= end - STRIPE);
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += length;
+        for (; p + 8 <= end; p += 8) {
+            h ^= round(0, (long) LONGS.get(data, p));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (p + 4 <= end) {
+            h ^= ((int) INTS.get(data, p) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            p += 4;
+        }
+        for (; p < end; p += 1) {
+            h ^= (data[p] & 0xFF) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        return h ^ (h >>> 32);
+    }
+
+    /** Mixes eight bytes of input into an accumulator.
+     *  @param acc the accumulator
+     *  @param input the bytes, as a little-endian long
+     *  @return the new accumulator
+     */
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    /** Merges an accumulator into the hash.
+     *  @param h the hash
+     *  @param acc the accumulator
+     *  @return the new hash
+     */
+    private static long merge(long h, long acc) {
+        return (h ^ round(0, acc)) * P1 + P4;
+    }
+
+    /** Number of bytes consumed by the four accumulators at once. */
+    private static final int STRIPE = 32;
+
+    /** Primes of xxHash64. */
+    private static final long P1 = 0x9E3779B185EBCA87L,
+        P2 = 0xC2B2AE3D27D4EB4FL, P3 = 0x165667B19E3779F9L,
+        P4 = 0x85EBCA77C2B2AE63L, P5 = 0x27D4EB2F165667C5L;
+
+    /** Little-endian view of a byte array as longs. */
+    private static final VarHandle LONGS =
+        MethodHandles.byteArrayViewVarHandle(long[].class,
+                ByteOrder.LITTLE_ENDIAN);
+
+    /** Little-endian view of a byte array as ints. */
+    private static final VarHandle INTS =
+        MethodHandles.byteArrayViewVarHandle(int[].class,
+                ByteOrder.LITTLE_ENDIAN);
+}